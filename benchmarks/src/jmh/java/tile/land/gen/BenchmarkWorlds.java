@@ -0,0 +1,54 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import static tile.land.gen.Constants.CHUNK_VIEW_RADIUS;
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * Builds the worlds the benchmarks run against, without a GL context.
+ */
+final class BenchmarkWorlds {
+    static final int SEED = 1337;
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * @param worldSize The length of the world in chunks.
+     * @param chunkSize The length of a chunk in tiles.
+     * @return A square world with the default view radius and max height.
+     */
+    static WorldConfig createWorldConfig(int worldSize, int chunkSize) {
+        return new WorldConfig(worldSize, worldSize, chunkSize, CHUNK_VIEW_RADIUS, MAX_HEIGHT);
+    }
+
+    /**
+     * Creates a noise heightfield covering a square world.
+     *
+     * @param worldSize The length of the world in chunks.
+     * @param chunkSize The length of a chunk in tiles.
+     * @return The heightfield, with the corners of every chunk filled in.
+     */
+    static HeightmapProcessor createHeightfield(int worldSize, int chunkSize) {
+        HeightmapProcessor heightmapProcessor = new HeightmapProcessor(createWorldConfig(worldSize, chunkSize));
+        int corners = worldSize * chunkSize + 1;
+        heightmapProcessor.generate(new NoiseHeightSource(SEED, 64f, 4), corners, corners, ForkJoinPool.commonPool());
+        return heightmapProcessor;
+    }
+
+    /**
+     * @return A new temporary directory to save a world to, see {@link HeadlessChunks}. Delete it when done.
+     */
+    static FileHandle createWorldDirectory() {
+        try {
+            return new FileHandle(Files.createTempDirectory("benchmark-world").toFile());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create a directory for the benchmark world", e);
+        }
+    }
+}
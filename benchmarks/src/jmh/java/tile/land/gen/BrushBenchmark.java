@@ -0,0 +1,64 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.LongArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame of sculpting without a GL context: a brush works out the new heights, they are
+ * written to the heightfield, and every chunk under the brush is meshed again on all cores.
+ * Uploading is left out, it needs GL. A frame has about 16 ms at 60 fps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BrushBenchmark {
+    @Param({"8", "32"})
+    public int worldSize;
+    @Param({"16", "64"})
+    public int chunkSize;
+    @Param({"8", "32", "64"})
+    public int radius;
+    @Param({"RAISE", "SMOOTH"})
+    public TerrainBrush.Mode mode;
+
+    private HeightmapProcessor heightmapProcessor;
+    private ChunkMesher chunkMesher;
+    private TerrainBrush brush;
+    private final TerrainEdit edit = new TerrainEdit();
+    private final LongArray chunkKeys = new LongArray();
+    private float center;
+
+    @Setup
+    public void setup() {
+        WorldConfig worldConfig = BenchmarkWorlds.createWorldConfig(worldSize, chunkSize);
+        heightmapProcessor = BenchmarkWorlds.createHeightfield(worldSize, chunkSize);
+        chunkMesher = new ChunkMesher(heightmapProcessor, null, Color.WHITE, new ChunkGrid(chunkSize), ChunkMeshLayout.SHARED_GRID, ChunkVertexFormat.FLOAT);
+        brush = new TerrainBrush(mode, radius, 0.2f);
+        center = worldSize * chunkSize / 2f;
+
+        // A large brush can reach past a small world, only its chunks are meshed
+        for (int chunkX = Math.floorDiv(brush.getMinX(center) - 1, chunkSize); chunkX <= Math.floorDiv(brush.getMaxX(center) + 1, chunkSize); chunkX++) {
+            for (int chunkZ = Math.floorDiv(brush.getMinZ(center) - 1, chunkSize); chunkZ <= Math.floorDiv(brush.getMaxZ(center) + 1, chunkSize); chunkZ++) {
+                if (worldConfig.contains(chunkX, chunkZ)) chunkKeys.add(Chunk.Key.pack(chunkX, chunkZ));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<ChunkMeshData> sculptFrame() {
+        brush.apply(heightmapProcessor, center, center, edit);
+        for (int i = 0; i < edit.size(); i++) heightmapProcessor.setHeight(edit.getX(i), edit.getZ(i), edit.getHeight(i));
+        edit.clear();
+        return chunkMesher.generateChunkMeshData(ForkJoinPool.commonPool(), chunkKeys);
+    }
+
+    @TearDown
+    public void reportChunks() {
+        System.out.println("[BENCHMARK] Chunks meshed per frame: " + chunkKeys.size);
+    }
+}
@@ -0,0 +1,54 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.utils.StringBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ChunkHandler#getChunk} lookups of random chunks, a batch of them per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkLookupBenchmark {
+    private static final int LOOKUPS = 1024;
+
+    @Param({"8", "32", "128"})
+    public int worldSize;
+    @Param({"16", "64"})
+    public int chunkSize;
+
+    private ChunkHandler chunkHandler;
+    private final int[] chunkX = new int[LOOKUPS];
+    private final int[] chunkZ = new int[LOOKUPS];
+
+    @Setup
+    public void setup() {
+        // Registering chunks needs no GL context, only loading them does
+        chunkHandler = new ChunkHandler(new StringBuilder(), new ModelBuilder(), new PerspectiveCamera(), new PerformanceMetrics(), BenchmarkWorlds.createWorldConfig(worldSize, chunkSize));
+        for (int x = 0; x < worldSize; x++) {
+            for (int z = 0; z < worldSize; z++) {
+                chunkHandler.getChunk(x, z, true);
+            }
+        }
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < LOOKUPS; i++) {
+            chunkX[i] = random.nextInt(worldSize);
+            chunkZ[i] = random.nextInt(worldSize);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getChunk(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(chunkHandler.getChunk(chunkX[i], chunkZ[i], false));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Color;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU half of chunk generation: fetching the heights and filling the vertex arrays of
+ * every level of detail. Worlds are sized in chunks, so larger chunks mesh more tiles per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkMesherBenchmark {
+    @Param({"8", "32", "128"})
+    public int worldSize;
+    @Param({"16", "64"})
+    public int chunkSize;
+    @Param({"PER_TILE", "SHARED_GRID"})
+    public ChunkMeshLayout layout;
+    @Param({"FLOAT", "COMPACT"})
+    public ChunkVertexFormat format;
+
+    private ChunkMesher chunkMesher;
+    private int chunk;
+
+    @Setup
+    public void setup() {
+        chunkMesher = new ChunkMesher(BenchmarkWorlds.createHeightfield(worldSize, chunkSize), null, Color.WHITE, new ChunkGrid(chunkSize), layout, format);
+    }
+
+    @Benchmark
+    public ChunkMeshData generateChunk() {
+        // Walk over every chunk, so the heights aren't always in cache
+        chunk = (chunk + 1) % (worldSize * worldSize);
+        return chunkMesher.generateChunkMeshData(chunk % worldSize, chunk / worldSize);
+    }
+}
@@ -0,0 +1,57 @@
+package tile.land.gen;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading heights from the heightfield, one at a time and a chunk block at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HeightSampleBenchmark {
+    private static final int SAMPLES = 1024;
+
+    @Param({"8", "32", "128"})
+    public int worldSize;
+    @Param({"16", "64"})
+    public int chunkSize;
+
+    private HeightmapProcessor heightmapProcessor;
+    private final int[] sampleX = new int[SAMPLES];
+    private final int[] sampleZ = new int[SAMPLES];
+    private float[] block;
+
+    @Setup
+    public void setup() {
+        heightmapProcessor = BenchmarkWorlds.createHeightfield(worldSize, chunkSize);
+        block = new float[(chunkSize + 1) * (chunkSize + 1)];
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < SAMPLES; i++) {
+            sampleX[i] = random.nextInt(heightmapProcessor.getWidth());
+            sampleZ[i] = random.nextInt(heightmapProcessor.getDepth());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float getHeight() {
+        float sum = 0f;
+        for (int i = 0; i < SAMPLES; i++) {
+            sum += heightmapProcessor.getHeight(sampleX[i], sampleZ[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Counted per block, divide by {@code (chunkSize + 1)^2} heights to compare it with {@link #getHeight()}.
+     */
+    @Benchmark
+    public float[] getChunkBlock() {
+        heightmapProcessor.getBlock(sampleX[0] / chunkSize * chunkSize, sampleZ[0] / chunkSize * chunkSize, chunkSize + 1, chunkSize + 1, block);
+        return block;
+    }
+}
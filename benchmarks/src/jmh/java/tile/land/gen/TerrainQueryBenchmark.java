@@ -0,0 +1,68 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * {@link TerrainQuery} height lookups and ray picks, with rays cast down at the terrain from
+ * above it like a camera would. The quadtrees are built in the warmup, edits aren't measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TerrainQueryBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"8", "32"})
+    public int worldSize;
+    @Param({"16", "64"})
+    public int chunkSize;
+
+    private TerrainQuery terrainQuery;
+    private final float[] queryX = new float[QUERIES];
+    private final float[] queryZ = new float[QUERIES];
+    private final Ray[] rays = new Ray[QUERIES];
+    private final Vector3 hit = new Vector3();
+
+    @Setup
+    public void setup() {
+        terrainQuery = new TerrainQuery(BenchmarkWorlds.createHeightfield(worldSize, chunkSize), null, worldSize, worldSize, chunkSize);
+
+        Random random = new Random(BenchmarkWorlds.SEED);
+        float length = worldSize * chunkSize;
+        for (int i = 0; i < QUERIES; i++) {
+            queryX[i] = random.nextFloat() * length;
+            queryZ[i] = random.nextFloat() * length;
+
+            Vector3 origin = new Vector3(random.nextFloat() * length, MAX_HEIGHT * 2f, random.nextFloat() * length);
+            Vector3 direction = new Vector3(random.nextFloat() * 2f - 1f, -0.2f - random.nextFloat(), random.nextFloat() * 2f - 1f).nor();
+            rays[i] = new Ray(origin, direction);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public float getHeightAt() {
+        float sum = 0f;
+        for (int i = 0; i < QUERIES; i++) {
+            sum += terrainQuery.getHeightAt(queryX[i], queryZ[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int intersectRay() {
+        int hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            if (terrainQuery.intersectRay(rays[i], 1000f, hit)) hits++;
+        }
+        return hits;
+    }
+}
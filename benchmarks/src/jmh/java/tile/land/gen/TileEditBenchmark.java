@@ -0,0 +1,76 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * Tile edit throughput through {@link ChunkHandler#commitEdit}: raising tile corners in the
+ * heightfield and in every loaded chunk sharing them, then {@link ChunkHandler#flushEdits()}
+ * copying the changed vertices into the chunk meshes. The chunks are loaded by {@link HeadlessChunks},
+ * so the GL upload itself does nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TileEditBenchmark {
+    private static final int EDITS = 256;
+
+    @Param({"8", "32"})
+    public int worldSize;
+    @Param({"16", "64"})
+    public int chunkSize;
+    @Param({"PER_TILE", "SHARED_GRID"})
+    public ChunkMeshLayout layout;
+    @Param({"FLOAT", "COMPACT"})
+    public ChunkVertexFormat format;
+
+    private FileHandle worldDirectory;
+    private ChunkHandler chunkHandler;
+    private final TerrainEdit edit = new TerrainEdit();
+    private final int[] editX = new int[EDITS];
+    private final int[] editZ = new int[EDITS];
+    private float rise = 0.5f;
+
+    @Setup
+    public void setup() {
+        WorldConfig worldConfig = BenchmarkWorlds.createWorldConfig(worldSize, chunkSize);
+        PerspectiveCamera camera = new PerspectiveCamera();
+        float center = worldSize * chunkSize / 2f;
+        camera.position.set(center, MAX_HEIGHT, center);
+        worldDirectory = BenchmarkWorlds.createWorldDirectory();
+        chunkHandler = HeadlessChunks.create(worldConfig, layout, format, camera, new PerformanceMetrics(), worldDirectory);
+
+        // Edits land in the chunks loaded around the camera, corners on their borders included
+        int centerChunk = worldSize / 2;
+        int minChunk = Math.max(0, centerChunk - worldConfig.getViewRadius());
+        int maxChunk = Math.min(worldSize - 1, centerChunk + worldConfig.getViewRadius());
+        int corners = (maxChunk - minChunk + 1) * chunkSize + 1;
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < EDITS; i++) {
+            editX[i] = minChunk * chunkSize + random.nextInt(corners);
+            editZ[i] = minChunk * chunkSize + random.nextInt(corners);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EDITS)
+    public boolean raiseCorners() {
+        for (int i = 0; i < EDITS; i++) edit.raise(editX[i], editZ[i], rise);
+        // Lowered again on the next call, so the heights stay in the range of the compact format
+        rise = -rise;
+        chunkHandler.commitEdit(edit);
+        return chunkHandler.flushEdits();
+    }
+
+    @TearDown
+    public void tearDown() {
+        chunkHandler.dispose();
+        worldDirectory.deleteDirectory();
+    }
+}
@@ -0,0 +1,89 @@
+package tile.land.gen;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes allocated by a thread, using the allocation counter of HotSpot based JVMs.
+ * On other JVMs nothing is counted and every sample is 0.
+ * <p>
+ * The counter lives in {@code com.sun.management}, which not every JVM has, so it is looked up
+ * when the counter is made instead of linked against. A method handle reads it, which unlike
+ * reflection doesn't box the thread id or the result.
+ * <p>
+ * Sample from one thread only, the counter is read for the thread calling {@link #sample()}.
+ */
+public class AllocationCounter {
+    private static final String HOTSPOT_THREAD_BEAN = "com.sun.management.ThreadMXBean";
+
+    /**
+     * Reads the bytes allocated by a thread id, null if this JVM can't count them.
+     */
+    private final MethodHandle allocatedBytes;
+    /**
+     * What reading the counter allocates itself, older JVMs wrap the thread id in an array.
+     */
+    @Getter
+    private final long overhead;
+    private long lastBytes;
+
+    public AllocationCounter() {
+        allocatedBytes = findAllocatedBytes();
+
+        // Reading twice in a row only allocates what a read does
+        long minOverhead = Long.MAX_VALUE;
+        for (int i = 0; i < 32; i++) {
+            long before = read();
+            minOverhead = Math.min(minOverhead, read() - before);
+        }
+        overhead = Math.max(0, minOverhead);
+        lastBytes = read();
+    }
+
+    private static MethodHandle findAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            Class<?> beanClass = Class.forName(HOTSPOT_THREAD_BEAN);
+            if (!beanClass.isInstance(bean)) return null;
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            if (!(boolean) lookup.findVirtual(beanClass, "isThreadAllocatedMemorySupported", MethodType.methodType(boolean.class)).invoke(bean)) return null;
+            lookup.findVirtual(beanClass, "setThreadAllocatedMemoryEnabled", MethodType.methodType(void.class, boolean.class)).invoke(bean, true);
+            return lookup.findVirtual(beanClass, "getThreadAllocatedBytes", MethodType.methodType(long.class, long.class)).bindTo(bean);
+        } catch (Throwable e) {
+            System.out.println("[ALLOCATION] This JVM can't count allocations: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return True if this JVM can count allocations.
+     */
+    public boolean isSupported() {
+        return allocatedBytes != null;
+    }
+
+    /**
+     * @return The bytes allocated by the calling thread since the last sample, not counting the counter itself.
+     */
+    public long sample() {
+        long bytes = read();
+        long allocated = Math.max(0, bytes - lastBytes - overhead);
+        lastBytes = bytes;
+        return allocated;
+    }
+
+    private long read() {
+        if (allocatedBytes == null) return 0;
+        try {
+            return (long) allocatedBytes.invokeExact(Thread.currentThread().getId());
+        } catch (Throwable e) {
+            throw new RuntimeException("Could not read the allocation counter", e);
+        }
+    }
+}
@@ -1,67 +1,443 @@
 package tile.land.gen;
 
+import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.g3d.Model;
-import com.badlogic.gdx.graphics.g3d.ModelCache;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.graphics.glutils.IndexBufferObject;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
-import static tile.land.gen.Constants.CHUNK_SIZE;
 import static tile.land.gen.Constants.SLASH;
 
 /**
  * A chunk that is a part of a world of multiple chunks. This chunk is responsible
  * for holding the data needed to render one part of a landmass.
+ * <p>
+ * Every level of detail is drawn by one node, with a part for every sub-mesh of the {@link ChunkGrid}.
  */
 @Getter
-@RequiredArgsConstructor
 public class Chunk {
+    private static final Vector3 tmpMin = new Vector3();
+    private static final Vector3 tmpMax = new Vector3();
+
     private final int chunkX, chunkZ;
+    @Getter(AccessLevel.NONE)
+    private final ChunkGrid grid;
     private Model model;
     private ModelInstance modelInstance;
-    private ModelCache modelCache;
+    /**
+     * The format of the vertices of every mesh of this chunk.
+     */
+    private ChunkVertexFormat vertexFormat;
+    /**
+     * The layout of the full detail vertices.
+     */
+    private ChunkMeshLayout meshLayout;
+    /**
+     * Where the meshes and vertex arrays of this chunk go when it is unloaded, null to dispose them.
+     */
+    @Getter(AccessLevel.NONE)
+    private ChunkMeshPool meshPool;
+
+    /**
+     * Holds one node per coarser level of detail, named after the level.
+     */
+    private Model lodModel;
+    private ModelInstance[] lodInstances;
+    /**
+     * The {@link ChunkLod#getStitchKey} of the indices every level currently uses.
+     */
+    private final long[] lodStitchKeys;
+    /**
+     * The full detail indices of every sub-mesh with flat tiles merged, used while no neighbour needs
+     * the full detail edges stitched. Null when this chunk's tiles aren't merged.
+     */
+    private short[][] mergedIndices;
+    /**
+     * A copy of the full detail mesh vertices. Edits are made here, then only the changed range is uploaded.
+     */
+    private float[] vertices;
+    /**
+     * A copy of the vertices of every level of detail, index 0 is the same array as {@link #vertices}.
+     */
+    private float[][] lodVertices;
+    /**
+     * The changed range of every levels vertices, counted in vertices. Empty when start is after end.
+     */
+    @Getter(AccessLevel.NONE)
+    private final int[] dirtyStart, dirtyEnd;
+    /**
+     * True while this chunk has changes that aren't uploaded.
+     */
+    private boolean dirty;
+    /**
+     * Goes up every time a mesh of this chunk changes, so copies of it know to update.
+     */
+    private int meshVersion;
+    /**
+     * The world space box around every tile of this chunk, used for frustum culling.
+     */
+    private final BoundingBox boundingBox = new BoundingBox();
+
+    /**
+     * Residency bookkeeping, owned by the {@link ChunkResidencyCache}.
+     */
+    long lastVisiblePass, residentBytes;
+    @Getter(AccessLevel.NONE)
+    Chunk residentPrevious, residentNext;
+
+    public Chunk(int chunkX, int chunkZ, ChunkGrid grid) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.grid = grid;
+        this.lodStitchKeys = new long[grid.getLevelCount()];
+        this.dirtyStart = new int[grid.getLevelCount()];
+        this.dirtyEnd = new int[grid.getLevelCount()];
+        clearDirty();
+    }
 
-    public void setModel(Model model) {
+    /**
+     * Sets the full detail model of this chunk.
+     *
+     * @param model    The model, made of {@link ChunkMesh chunk meshes} when a pool is given. One part per sub-mesh.
+     * @param vertices The vertices of every sub-mesh of the model, kept as a copy that edits are made to.
+     * @param layout   The layout of the vertices.
+     * @param format   The format of the vertices.
+     * @param meshPool Where the resources of this chunk go when it is unloaded, may be null.
+     */
+    public void setModel(Model model, float[] vertices, ChunkMeshLayout layout, ChunkVertexFormat format, ChunkMeshPool meshPool) {
         this.model = model;
+        this.vertices = vertices;
+        this.meshLayout = layout;
+        this.vertexFormat = format;
+        this.meshPool = meshPool;
         this.modelInstance = new ModelInstance(model);
-        modelInstance.transform.setTranslation(chunkX * CHUNK_SIZE, 0, chunkZ * CHUNK_SIZE);
+        format.setTransform(modelInstance.transform, chunkX, chunkZ, grid.getChunkSize());
+        lodStitchKeys[0] = -1;
+        // The new vertices hold every edit already, pending ranges were for the old ones
+        clearDirty();
+        meshVersion++;
+    }
+
+    /**
+     * Marks a vertex of a level of detail as changed.
+     *
+     * @param level  The level of detail, 0 for {@link #getVertices()}.
+     * @param vertex The index of the vertex, counted in vertices.
+     * @return True if this chunk had no changes yet.
+     */
+    public boolean markVertexDirty(int level, int vertex) {
+        boolean clean = !dirty;
+        dirty = true;
+        dirtyStart[level] = Math.min(dirtyStart[level], vertex);
+        dirtyEnd[level] = Math.max(dirtyEnd[level], vertex + 1);
+        return clean;
+    }
+
+    /**
+     * Uploads the changed range of vertices of every level to its sub-meshes, and grows the bounds to fit
+     * the full detail changes. The new {@link #getMeshVersion() mesh version} makes the
+     * {@link RegionBatcher} merge the region of this chunk again.
+     */
+    public void flushVertices() {
+        if (!dirty || !isLoaded()) return;
+        dirty = false;
+        meshVersion++;
+
+        final int chunkSize = grid.getChunkSize();
+        for (int level = 0; level < dirtyStart.length; level++) {
+            if (dirtyStart[level] > dirtyEnd[level]) continue;
+
+            final int start = dirtyStart[level];
+            final int end = dirtyEnd[level];
+            clearDirty(level);
 
-        // Set up the model cache for this model
-        modelCache = new ModelCache();
-        modelCache.begin();
-        modelCache.add(modelInstance);
-        modelCache.end();
+            if (level == 0) {
+                updateVertices(0, vertices, start, end);
+                for (int vertex = start; vertex < end; vertex++) {
+                    vertexFormat.getPosition(vertices, vertex, tmpMin);
+                    boundingBox.ext(tmpMin.x + chunkX * chunkSize, tmpMin.y, tmpMin.z + chunkZ * chunkSize);
+                }
+            } else if (lodInstances != null) {
+                updateVertices(level, lodVertices[level], start, end);
+            }
+        }
+    }
+
+    /**
+     * Uploads a range of the vertices of a level to every sub-mesh holding some of them.
+     *
+     * @param start The first vertex.
+     * @param end   The vertex after the last one.
+     */
+    private void updateVertices(int level, float[] levelVertices, int start, int end) {
+        final int vertexSize = vertexFormat.getFloatsPerVertex();
+        for (int subMesh = 0; subMesh < grid.getSubMeshCount(meshLayout, level); subMesh++) {
+            int first = grid.getFirstVertex(meshLayout, level, subMesh);
+            int from = Math.max(start, first);
+            int to = Math.min(end, first + grid.getSubMeshVertexCount(meshLayout, level, subMesh));
+            if (from >= to) continue;
+            getMeshPart(level, subMesh).mesh.updateVertices((from - first) * vertexSize, levelVertices, from * vertexSize, (to - from) * vertexSize);
+        }
+    }
+
+    /**
+     * Swaps the vertices of every level for newly meshed ones, uploaded into the meshes this chunk
+     * already has. They must be meshed with the same layout and format. Pending edits are dropped,
+     * the new vertices hold them. The old vertex arrays go back to the pool.
+     *
+     * @param newLodVertices The vertices of every level, index 0 is the full detail.
+     */
+    public void replaceVertices(float[][] newLodVertices) {
+        final int vertexSize = vertexFormat.getFloatsPerVertex();
+        for (int level = 0; level < newLodVertices.length; level++) {
+            for (int subMesh = 0; subMesh < grid.getSubMeshCount(meshLayout, level); subMesh++) {
+                int first = grid.getFirstVertex(meshLayout, level, subMesh);
+                int count = grid.getSubMeshVertexCount(meshLayout, level, subMesh);
+                getMeshPart(level, subMesh).mesh.setVertices(newLodVertices[level], first * vertexSize, count * vertexSize);
+            }
+            if (meshPool != null && lodVertices[level] != newLodVertices[level]) meshPool.freeVertices(level, lodVertices[level]);
+        }
+        lodVertices = newLodVertices;
+        vertices = newLodVertices[0];
+        clearDirty();
+        meshVersion++;
+    }
+
+    private void clearDirty(int level) {
+        dirtyStart[level] = Integer.MAX_VALUE;
+        dirtyEnd[level] = 0;
+    }
+
+    /**
+     * Forgets the changes of every level, so the next {@link #markVertexDirty} reports this chunk as clean.
+     */
+    private void clearDirty() {
+        dirty = false;
+        for (int level = 0; level < dirtyStart.length; level++) clearDirty(level);
+    }
+
+    /**
+     * Sets the bounds of this chunk from the height of its lowest and highest tile corner.
+     *
+     * @param minHeight The lowest height in the chunk.
+     * @param maxHeight The highest height in the chunk.
+     */
+    public void setBounds(float minHeight, float maxHeight) {
+        final int chunkSize = grid.getChunkSize();
+        boundingBox.set(
+            tmpMin.set(chunkX * chunkSize, minHeight, chunkZ * chunkSize),
+            tmpMax.set((chunkX + 1) * chunkSize, maxHeight, (chunkZ + 1) * chunkSize));
+    }
+
+    /**
+     * Sets the model that holds the coarser levels of detail of this chunk. Its vertices use the
+     * same format as the full detail model, so this must be called after {@link #setModel}.
+     *
+     * @param lodModel    A model with one node for every level from 1 to {@link ChunkGrid#getLevelCount()}, and one part per sub-mesh.
+     * @param lodVertices The vertices of every level, kept as a copy that edits are made to.
+     */
+    public void setLodModel(Model lodModel, float[][] lodVertices) {
+        this.lodModel = lodModel;
+        this.lodVertices = lodVertices;
+        this.lodInstances = new ModelInstance[grid.getLevelCount()];
+        for (int level = 1; level < grid.getLevelCount(); level++) {
+            lodInstances[level] = new ModelInstance(lodModel, Integer.toString(level));
+            vertexFormat.setTransform(lodInstances[level].transform, chunkX, chunkZ, grid.getChunkSize());
+            lodStitchKeys[level] = -1;
+            clearDirty(level);
+        }
+        meshVersion++;
+    }
+
+    /**
+     * @param level The level of detail.
+     * @return What to render for this chunk at the given level.
+     */
+    public RenderableProvider getRenderable(int level) {
+        if (level == 0 || lodInstances == null) return modelInstance;
+        return lodInstances[level];
+    }
+
+    /**
+     * Swaps the indices of a level of detail, used to stitch it to its neighbours.
+     *
+     * @param level         The level of detail.
+     * @param stitchKey     The key of the indices, nothing is uploaded if the level already uses them.
+     * @param indices       The new indices of every sub-mesh.
+     * @param sharedBuffers Holds the index buffers every chunk with these indices uses, null to upload a copy for this chunk.
+     */
+    public void setLodIndices(int level, long stitchKey, short[][] indices, ChunkMeshPool sharedBuffers) {
+        if (lodStitchKeys[level] == stitchKey) return;
+        lodStitchKeys[level] = stitchKey;
+        meshVersion++;
+
+        for (int subMesh = 0; subMesh < indices.length; subMesh++) {
+            MeshPart meshPart = getMeshPart(level, subMesh);
+            if (sharedBuffers != null) {
+                IndexBufferObject sharedBuffer = sharedBuffers.getIndexBuffer(ChunkLod.getSubMeshKey(stitchKey, subMesh), indices[subMesh]);
+                ((ChunkMesh) meshPart.mesh).shareIndices(sharedBuffer);
+            } else {
+                meshPart.mesh.setIndices(indices[subMesh]);
+            }
+            meshPart.size = indices[subMesh].length;
+        }
+    }
+
+    /**
+     * @return The part of the node of a level that draws a sub-mesh.
+     */
+    private MeshPart getMeshPart(int level, int subMesh) {
+        ModelInstance instance = level == 0 ? modelInstance : lodInstances[level];
+        return instance.nodes.first().parts.get(subMesh).meshPart;
+    }
+
+    /**
+     * @return The triangles the full detail mesh currently draws, 0 if it isn't loaded.
+     */
+    public int getTriangleCount() {
+        if (!isLoaded()) return 0;
+        int indices = 0;
+        for (int subMesh = 0; subMesh < grid.getSubMeshCount(meshLayout, 0); subMesh++) indices += getMeshPart(0, subMesh).size;
+        return indices / 3;
+    }
+
+    /**
+     * Sets the full detail indices with flat tiles merged, they are used from the next time
+     * the indices of this chunk are picked.
+     *
+     * @param mergedIndices The merged indices of every sub-mesh, or null to stop merging.
+     */
+    public void setMergedIndices(short[][] mergedIndices) {
+        this.mergedIndices = mergedIndices;
+        lodStitchKeys[0] = -1;
+    }
+
+    public long getLodStitchKey(int level) {
+        return lodStitchKeys[level];
+    }
+
+    /**
+     * @return True if this chunk has its models, false if it still has to be generated.
+     */
+    public boolean isLoaded() {
+        return model != null;
+    }
+
+    /**
+     * Disposes the models of this chunk. The chunk stays in the world and can be loaded again.
+     */
+    public void unload() {
+        if (meshPool != null) {
+            // Everything goes back to the pool, the models hold nothing but their meshes
+            if (model != null) meshPool.freeMeshes(model);
+            if (lodModel != null) meshPool.freeMeshes(lodModel);
+            if (lodVertices != null) {
+                for (int level = 0; level < lodVertices.length; level++) meshPool.freeVertices(level, lodVertices[level]);
+            } else if (vertices != null) {
+                meshPool.freeVertices(0, vertices);
+            }
+        } else {
+            if (model != null) model.dispose();
+            if (lodModel != null) lodModel.dispose();
+        }
+        meshPool = null;
+        model = null;
+        vertices = null;
+        lodVertices = null;
+        modelInstance = null;
+        lodModel = null;
+        lodInstances = null;
+        mergedIndices = null;
+        clearDirty();
+    }
+
+    /**
+     * Estimates the memory used by the meshes of this chunk. The copies merged into the
+     * {@link RegionBatcher} regions are not counted, they are shared by every chunk of a region.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateBytes() {
+        long bytes = 0;
+        if (model != null) {
+            for (Mesh mesh : model.meshes) bytes += getMeshBytes(mesh);
+        }
+        if (lodModel != null) {
+            for (Mesh mesh : lodModel.meshes) bytes += getMeshBytes(mesh);
+        }
+        return bytes;
+    }
+
+    private static long getMeshBytes(Mesh mesh) {
+        // Shared index buffers aren't counted per chunk
+        int indices = mesh instanceof ChunkMesh ? ((ChunkMesh) mesh).getOwnedIndexCount() : mesh.getMaxIndices();
+        return (long) mesh.getMaxVertices() * mesh.getVertexSize() + indices * 2L;
     }
 
     @Override
     public String toString() {
+        if (!isLoaded()) return "Chunk X/Z: " + chunkX + SLASH + chunkZ + ", Not loaded";
         return "Chunk X/Z: " + chunkX + SLASH + chunkZ + ", Nodes: " + model.nodes.size + ", Meshes: " + model.meshes.size + ", MeshParts: " + model.meshParts.size;
     }
 
     /**
-     * The key that can be used to identify a chunk.
+     * The key that can be used to identify a chunk. Both chunk coordinates are packed
+     * into a single long, so two different chunks can never share a key.
      */
     public static class Key {
-        private final int chunkX, chunkZ;
-
-        private final int hashCode;
+        private final long packed;
 
         public Key(int chunkX, int chunkZ) {
-            this.chunkX = chunkX;
-            this.chunkZ = chunkZ;
-            this.hashCode = 31 * chunkX + chunkZ;
+            this.packed = pack(chunkX, chunkZ);
+        }
+
+        /**
+         * Packs chunk coordinates into one long, X in the high 32 bits and Z in the low 32 bits.
+         *
+         * @param chunkX The X location of the chunk.
+         * @param chunkZ The Z location of the chunk.
+         * @return The packed chunk key.
+         */
+        public static long pack(int chunkX, int chunkZ) {
+            return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+        }
+
+        public static int unpackX(long packed) {
+            return (int) (packed >> 32);
+        }
+
+        public static int unpackZ(long packed) {
+            return (int) packed;
+        }
+
+        public long getPacked() {
+            return packed;
+        }
+
+        public int getChunkX() {
+            return unpackX(packed);
+        }
+
+        public int getChunkZ() {
+            return unpackZ(packed);
         }
 
         @Override
         public int hashCode() {
-            return hashCode;
+            // Spread both halves over the whole int, so neighbouring chunks don't cluster
+            return (int) (packed * 0x9E3779B97F4A7C15L >>> 32);
         }
 
         @Override
         public boolean equals(Object object) {
             if (!(object instanceof Chunk.Key)) return false;
             Chunk.Key compareKey = (Chunk.Key) object;
-            return chunkX == compareKey.chunkX && chunkZ == compareKey.chunkZ;
+            return packed == compareKey.packed;
         }
     }
 }
@@ -0,0 +1,184 @@
+package tile.land.gen;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import static tile.land.gen.Constants.LOD_LEVELS;
+
+/**
+ * Where the tiles and vertices of a chunk are, for the chunk size a {@link WorldConfig} picked.
+ * It holds no state besides the size, so one grid is shared by every thread.
+ * <p>
+ * Indices are 16 bit, so a chunk mesh with more than {@link #MAX_VERTICES} vertices is split into
+ * sub-meshes, each with its own vertex buffer. A sub-mesh holds a band of whole tile columns along X,
+ * its vertices are one range of the chunk's vertex array. Grid sub-meshes share the column of corners
+ * between them. The band width is a multiple of the coarsest level of detail step, so no triangle
+ * of any level, stitched or not, crosses from one band into the next. Small chunks have one sub-mesh.
+ */
+@Getter
+public class ChunkGrid {
+    /**
+     * The most vertices a mesh can index. Indices are 16 bit, and drawn as unsigned shorts.
+     */
+    public static final int MAX_VERTICES = 1 << 16;
+
+    /**
+     * The length and width of a chunk in tiles.
+     */
+    private final int chunkSize;
+    /**
+     * The number of level of detail meshes every chunk gets. Levels need a step that divides
+     * the chunk size and leaves at least two cells per side.
+     */
+    private final int levelCount;
+    /**
+     * The tile columns in a sub-mesh, by layout and level of detail.
+     */
+    @Getter(AccessLevel.NONE)
+    private final int[][] subMeshWidths;
+
+    public ChunkGrid(int chunkSize) {
+        this.chunkSize = chunkSize;
+
+        int levels = 1;
+        while (levels < LOD_LEVELS && chunkSize % ChunkLod.getStep(levels) == 0 && chunkSize / ChunkLod.getStep(levels) >= 2) levels++;
+        this.levelCount = levels;
+
+        int maxStep = ChunkLod.getStep(levelCount - 1);
+        subMeshWidths = new int[ChunkMeshLayout.values().length][levelCount];
+        for (ChunkMeshLayout layout : ChunkMeshLayout.values()) {
+            for (int level = 0; level < levelCount; level++) {
+                int width = chunkSize;
+                while (width > maxStep && getVertexCount(layout, level, width) > MAX_VERTICES) width -= maxStep;
+                if (getVertexCount(layout, level, width) > MAX_VERTICES) {
+                    throw new RuntimeException("A band of " + width + " tiles of a " + layout + " chunk of " + chunkSize + " tiles has more vertices than 16 bit indices reach");
+                }
+                subMeshWidths[layout.ordinal()][level] = width;
+            }
+        }
+    }
+
+    /**
+     * @return The vertices of a band of tile columns of a mesh.
+     */
+    private int getVertexCount(ChunkMeshLayout layout, int level, int width) {
+        if (level == 0 && layout == ChunkMeshLayout.PER_TILE) return 4 * width * chunkSize;
+        int step = ChunkLod.getStep(level);
+        return (width / step + 1) * (chunkSize / step + 1);
+    }
+
+    /**
+     * @param layout The vertex layout of a level 0 mesh, coarser levels are always grids.
+     * @param level  The level of detail.
+     * @return The vertices of a whole chunk mesh.
+     */
+    public int getVertexCount(ChunkMeshLayout layout, int level) {
+        return getVertexCount(layout, level, chunkSize);
+    }
+
+    /**
+     * @return The number of sub-meshes a chunk mesh is split into.
+     */
+    public int getSubMeshCount(ChunkMeshLayout layout, int level) {
+        int width = subMeshWidths[layout.ordinal()][level];
+        return (chunkSize + width - 1) / width;
+    }
+
+    /**
+     * @param tileX The local X tile.
+     * @return The sub-mesh that draws the tile.
+     */
+    public int getSubMesh(ChunkMeshLayout layout, int level, int tileX) {
+        return Math.min(tileX / subMeshWidths[layout.ordinal()][level], getSubMeshCount(layout, level) - 1);
+    }
+
+    /**
+     * @return The first local X tile of a sub-mesh.
+     */
+    public int getSubMeshX(ChunkMeshLayout layout, int level, int subMesh) {
+        return subMesh * subMeshWidths[layout.ordinal()][level];
+    }
+
+    /**
+     * @return The index of the first vertex of a sub-mesh in the chunk's vertex array.
+     */
+    public int getFirstVertex(ChunkMeshLayout layout, int level, int subMesh) {
+        int x = getSubMeshX(layout, level, subMesh);
+        return getVertex(layout, ChunkLod.getStep(level), x, 0);
+    }
+
+    /**
+     * @return The vertices of a sub-mesh.
+     */
+    public int getSubMeshVertexCount(ChunkMeshLayout layout, int level, int subMesh) {
+        int x = getSubMeshX(layout, level, subMesh);
+        return getVertexCount(layout, level, Math.min(chunkSize, x + subMeshWidths[layout.ordinal()][level]) - x);
+    }
+
+    /**
+     * Gets the vertex at a tile corner of a sub-mesh, counted from the first vertex of the sub-mesh.
+     * Per tile corners on the band edges are taken from the band's own tiles.
+     *
+     * @param x The local X tile corner, inside the band of the sub-mesh and a multiple of the level's step.
+     * @param z The local Z tile corner, a multiple of the level's step.
+     */
+    public int getLocalVertex(ChunkMeshLayout layout, int level, int subMesh, int x, int z) {
+        int firstX = getSubMeshX(layout, level, subMesh);
+        if (level == 0 && layout == ChunkMeshLayout.PER_TILE) {
+            int lastX = Math.min(chunkSize, firstX + subMeshWidths[layout.ordinal()][level]) - 1;
+            int tileX = Math.min(x, lastX);
+            int tileZ = Math.min(z, chunkSize - 1);
+            int corner = x > tileX ? (z > tileZ ? 2 : 1) : (z > tileZ ? 3 : 0);
+            return ((tileX - firstX) * chunkSize + tileZ) * 4 + corner;
+        }
+        return getVertex(layout, ChunkLod.getStep(level), x, z) - getFirstVertex(layout, level, subMesh);
+    }
+
+    /**
+     * Gets the vertex at a tile corner of a chunk mesh.
+     *
+     * @param layout The vertex layout of a level 0 mesh.
+     * @param step   The step of the mesh level.
+     * @param x      The local X tile corner, a multiple of step.
+     * @param z      The local Z tile corner, a multiple of step.
+     * @return The index of the vertex in the chunk's vertex array.
+     */
+    public int getVertex(ChunkMeshLayout layout, int step, int x, int z) {
+        if (step == 1 && layout == ChunkMeshLayout.PER_TILE) {
+            // Corners on the far edges only exist on the last tile
+            int tileX = Math.min(x, chunkSize - 1);
+            int tileZ = Math.min(z, chunkSize - 1);
+            int corner = x > tileX ? (z > tileZ ? 2 : 1) : (z > tileZ ? 3 : 0);
+            return (tileX * chunkSize + tileZ) * 4 + corner;
+        }
+        return x / step * (chunkSize / step + 1) + z / step;
+    }
+
+    /**
+     * Finds the vertex that holds the corner of a tile.
+     *
+     * @param layout The layout of the chunk mesh.
+     * @param localX The local X tile. Must be between 0 - chunk size.
+     * @param localZ The local Z tile. Must be between 0 - chunk size.
+     * @param corner The corner of the tile.
+     * @return The index of the vertex, counted in vertices not floats.
+     */
+    public int getCornerVertex(ChunkMeshLayout layout, int localX, int localZ, TileCorner corner) {
+        if (layout == ChunkMeshLayout.SHARED_GRID) {
+            return (localX + corner.getOffsetX()) * (chunkSize + 1) + localZ + corner.getOffsetZ();
+        }
+        return (localX * chunkSize + localZ) * 4 + corner.getVertexID();
+    }
+
+    /**
+     * Gets the type of a tile, the corners on the far edges of the chunk use the last tile.
+     *
+     * @param tiles  The tile types of the chunk, may be null.
+     * @param localX The local X tile corner.
+     * @param localZ The local Z tile corner.
+     */
+    public TileType getTileType(byte[] tiles, int localX, int localZ) {
+        if (tiles == null) return TileType.get((byte) 0);
+        return TileType.get(tiles[Math.min(localZ, chunkSize - 1) * chunkSize + Math.min(localX, chunkSize - 1)]);
+    }
+}
@@ -3,22 +3,25 @@ package tile.land.gen;
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.*;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.g3d.Material;
 import com.badlogic.gdx.graphics.g3d.Model;
-import com.badlogic.gdx.graphics.g3d.ModelCache;
-import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
 import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
 import com.badlogic.gdx.graphics.g3d.model.MeshPart;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
-import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.GridPoint2;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
 import com.badlogic.gdx.utils.StringBuilder;
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
 
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static tile.land.gen.Constants.*;
 
@@ -26,40 +29,223 @@ import static tile.land.gen.Constants.*;
  * This is the class that creates, manages, and disposes of all chunks.
  * The landmass is created here. See the example method below.
  */
-@RequiredArgsConstructor
 public class ChunkHandler extends ApplicationAdapter {
-    private final ConcurrentMap<Chunk.Key, Chunk> chunkConcurrentMap = new ConcurrentHashMap<>();
-    private final HeightmapProcessor heightmapProcessor = new HeightmapProcessor();
+    private static final int[] NO_NEIGHBOURS = new int[4];
+    private static final float CULL_REBUILD_COS = MathUtils.cosDeg(CULL_REBUILD_ANGLE);
+
+    /**
+     * Every chunk, indexed by {@link Chunk.Key#pack(int, int)}. Only touched from the render thread.
+     */
+    private final LongMap<Chunk> chunkIndex = new LongMap<>();
+    /**
+     * Decides which chunks keep their models loaded.
+     */
+    @Getter
+    private final ChunkResidencyCache residencyCache = new ChunkResidencyCache(CHUNK_RESIDENCY_BUDGET, CHUNK_RESIDENCY_BYTES);
+    private final HeightmapProcessor heightmapProcessor;
     private final StringBuilder stringBuilder;
     private final ModelBuilder modelBuilder;
     private final PerspectiveCamera camera;
+    private final PerformanceMetrics metrics;
+    /**
+     * The size of this world and how much of it is in view.
+     */
+    @Getter
+    private final WorldConfig worldConfig;
+    private final int viewDiameter;
+    /**
+     * The tile and vertex layout of this world's chunks.
+     */
+    @Getter
+    private final ChunkGrid chunkGrid;
+    private final int chunkSize;
+
+    /**
+     * Merges the visible chunks a region at a time.
+     */
+    @Getter
+    private final RegionBatcher regionBatcher = new RegionBatcher();
+    private final ChunkLod chunkLod;
+    private final int[] viewLevels;
+    private final int[] neighbourLevels = new int[4];
+    /**
+     * Visible chunks that are not loaded yet.
+     */
+    private final LongArray chunksToLoad = new LongArray();
+    /**
+     * Chunks with edits that still need to be uploaded.
+     */
+    private final Array<Chunk> dirtyChunks = new Array<>();
+    /**
+     * Merges the flat tiles of edited chunks again, on the render thread.
+     */
+    private final TileMerger tileMerger;
+    /**
+     * Reuses the buffers and vertex arrays of unloaded chunks, and holds the shared index buffers.
+     */
+    private final ChunkMeshPool meshPool;
+    /**
+     * The undo and redo history of height edits.
+     */
+    @Getter
+    private final EditJournal editJournal;
+    private final EditJournal.CornerSetter journalSetter = this::setCorner;
+    private final TerrainEdit brushEdit = new TerrainEdit();
+    /**
+     * Loaded chunks a brush changed, meshed again by the next {@link #flushEdits()}.
+     */
+    private final LongArray remeshChunks = new LongArray();
+
+    /**
+     * The camera direction the visible chunks were last gathered with.
+     */
+    private final Vector3 cullDirection = new Vector3();
+    private final Vector3 tmpPosition = new Vector3();
+
+    private ChunkMesher chunkMesher;
+    private RegionStorage regionStorage;
+    /**
+     * Height, normal and ray queries, answered from the heightfield.
+     */
+    private TerrainQuery terrainQuery;
+    /**
+     * Generates the chunks that come into view in the background.
+     */
+    @Getter
+    private ChunkScheduler chunkScheduler;
+    private Texture texture;
+    private Material material;
+    private Texture atlasTexture;
+    /**
+     * Draws the per tile meshes, every tile textured with its {@link TileType} cell.
+     */
+    private Material atlasMaterial;
+
+    /**
+     * How the vertices of this world's chunk meshes are laid out. Must be set before {@link #create()}.
+     */
+    @Setter
+    private ChunkMeshLayout meshLayout = CHUNK_MESH_LAYOUT;
+    /**
+     * How the vertices of this world's chunk meshes are stored. Must be set before {@link #create()}.
+     */
+    @Setter
+    private ChunkVertexFormat vertexFormat = CHUNK_VERTEX_FORMAT;
+    /**
+     * Where the heights of a new world come from, null for the heightmap image. Must be set before {@link #create()}.
+     * Other sources aren't limited by the image size, so any world size works with them.
+     */
+    @Setter
+    private HeightSource heightSource;
+    /**
+     * Merge runs of flat tiles with the same type into larger quads, see {@link TileMerger}.
+     * Only {@link ChunkMeshLayout#SHARED_GRID} meshes can merge. Must be set before {@link #create()}.
+     */
+    @Setter
+    private boolean mergeFlatTiles = MERGE_FLAT_TILES;
 
     private int currentChunkX;
     private int currentChunkZ;
+    /**
+     * Counts the calls to {@link #getNearbyChunks(Array)}, used to know when a chunk was last visible.
+     */
+    private long visibilityPass;
+
+    public ChunkHandler(StringBuilder stringBuilder, ModelBuilder modelBuilder, PerspectiveCamera camera, PerformanceMetrics metrics, WorldConfig worldConfig) {
+        this.stringBuilder = stringBuilder;
+        this.modelBuilder = modelBuilder;
+        this.camera = camera;
+        this.metrics = metrics;
+        this.worldConfig = worldConfig;
+        this.heightmapProcessor = new HeightmapProcessor(worldConfig);
+        this.viewDiameter = worldConfig.getViewDiameter();
+        this.viewLevels = new int[viewDiameter * viewDiameter];
+        this.chunkGrid = new ChunkGrid(worldConfig.getChunkSize());
+        this.chunkSize = chunkGrid.getChunkSize();
+        this.chunkLod = new ChunkLod(chunkGrid);
+        this.tileMerger = new TileMerger(chunkGrid);
+        this.meshPool = new ChunkMeshPool(chunkGrid.getLevelCount());
+        this.editJournal = new EditJournal(EDIT_JOURNAL_BYTES, chunkSize);
+    }
 
     @Override
     public void create() {
-        // Set the heightmap image we want to use
-        heightmapProcessor.setHeightmapImage(Gdx.files.internal("heightmap4.jpg"));
-
         // Get the texture info ready
-        Texture texture = new Texture(Gdx.files.internal("dirt.png"));
-        Color color = Color.WHITE;
-
-        // Generate chunk
-        for (int chunkX = 0; chunkX < WORLD_X_LENGTH; chunkX++) {
-            for (int chunkZ = 0; chunkZ < WORLD_Z_LENGTH; chunkZ++) {
-                Chunk chunk = getChunk(chunkX, chunkZ, true);
-                Model model = generateChunkModel(texture, color, chunkX, chunkZ);
-                Objects.requireNonNull(chunk).setModel(model);
-            }
+        texture = new Texture(Gdx.files.internal("dirt.png"));
+        texture.setWrap(Texture.TextureWrap.Repeat, Texture.TextureWrap.Repeat);
+        atlasTexture = TileAtlas.createTexture(Gdx.files.internal("dirt.png"));
+
+        create(new RegionStorage(Gdx.files.local(WORLD_SAVE_DIRECTORY)), new Material("texture", TextureAttribute.createDiffuse(texture)), TileAtlas.createMaterial(atlasTexture));
+    }
+
+    /**
+     * Opens or bakes the world and loads the chunks around the camera. Nothing here loads a texture,
+     * so chunks can be loaded without a window as long as GL calls go somewhere and a {@link #heightSource} is set.
+     *
+     * @param regionStorage Where the world is saved.
+     * @param material      Draws the grid meshes and every coarser level of detail.
+     * @param atlasMaterial Draws the per tile meshes.
+     */
+    void create(RegionStorage regionStorage, Material material, Material atlasMaterial) {
+        System.out.println("[WORLD CONFIG] " + worldConfig);
+        this.regionStorage = regionStorage;
+        this.material = material;
+        this.atlasMaterial = atlasMaterial;
+
+        // Open the saved world, or bake the heightmap image we want to use into a new one on the first run.
+        // The heightfield is kept, so unloaded chunks can be generated again.
+        if (regionStorage.exists()) {
+            regionStorage.open(heightmapProcessor);
+        } else {
+            if (heightSource == null) heightmapProcessor.setHeightmapImage(Gdx.files.internal("heightmap4.jpg"));
+            else heightmapProcessor.generate(heightSource, worldConfig.getWorldXLength() * chunkSize + 1, worldConfig.getWorldZLength() * chunkSize + 1, ForkJoinPool.commonPool());
+            regionStorage.create(heightmapProcessor);
         }
+        terrainQuery = new TerrainQuery(heightmapProcessor, regionStorage, worldConfig.getWorldXLength(), worldConfig.getWorldZLength(), chunkSize);
 
-        // We can dispose of the heightmap now since all chunks have been generated.
-        heightmapProcessor.dispose();
+        if (!vertexFormat.fitsChunkSize(chunkSize)) {
+            // Grid texture coordinates count the tiles of a chunk, compact ones stop at 127
+            System.out.println("[CHUNK MESH] Chunks of " + chunkSize + " tiles don't fit the texture coordinates of " + vertexFormat + ", using " + ChunkVertexFormat.FLOAT);
+            vertexFormat = ChunkVertexFormat.FLOAT;
+        }
+        if (vertexFormat == ChunkVertexFormat.COMPACT && worldConfig.getMaxHeight() > ChunkVertexFormat.COMPACT_HEIGHT_RANGE / 4f) {
+            // Compact heights are 16 bit steps up to a fixed range, leave the same room for edits the default height has
+            System.out.println("[CHUNK MESH] A max height of " + worldConfig.getMaxHeight() + " doesn't fit the compact vertex format, using " + ChunkVertexFormat.FLOAT);
+            vertexFormat = ChunkVertexFormat.FLOAT;
+        }
+        chunkMesher = new ChunkMesher(heightmapProcessor, regionStorage.getTileLayer(), Color.WHITE, chunkGrid, meshLayout, vertexFormat);
+        if (mergeFlatTiles && meshLayout != ChunkMeshLayout.SHARED_GRID) {
+            // Every per tile quad shows its own atlas cell, a merged quad would stretch one cell over all its tiles
+            System.out.println("[TILE MERGE] Only shared grid meshes can merge tiles, merging is off");
+            mergeFlatTiles = false;
+        }
+        chunkMesher.setMergeFlatTiles(mergeFlatTiles);
+        chunkMesher.setMeshPool(meshPool);
+
+        chunkScheduler = new ChunkScheduler(chunkMesher, regionStorage, ForkJoinPool.commonPool(), CHUNK_JOBS, worldConfig.getViewRadius(), chunkSize);
+
+        // Register every chunk. Until a chunk is loaded its bounds cover every possible height.
+        for (int chunkX = 0; chunkX < worldConfig.getWorldXLength(); chunkX++) {
+            for (int chunkZ = 0; chunkZ < worldConfig.getWorldZLength(); chunkZ++) {
+                Objects.requireNonNull(getChunk(chunkX, chunkZ, true)).setBounds(0f, worldConfig.getMaxHeight());
+            }
+        }
+        System.out.println("[NEW CHUNK] Registered " + chunkIndex.size + " chunks");
+
+        // Only the chunks around the camera are loaded up front, so the first frame has ground.
+        // Every other chunk is generated in the background once it comes into view.
+        int viewRadius = worldConfig.getViewRadius();
+        for (int chunkX = getCurrentChunkX() - viewRadius; chunkX <= getCurrentChunkX() + viewRadius; chunkX++) {
+            for (int chunkZ = getCurrentChunkZ() - viewRadius; chunkZ <= getCurrentChunkZ() + viewRadius; chunkZ++) {
+                if (!worldConfig.contains(chunkX, chunkZ)) continue;
+                chunksToLoad.add(Chunk.Key.pack(chunkX, chunkZ));
+            }
+        }
+        loadChunks(chunksToLoad);
+        chunksToLoad.clear();
 
         // Print chunk data debug
-        for (Chunk chunk : chunkConcurrentMap.values()) {
+        for (Chunk chunk : chunkIndex.values()) {
             System.out.println("[CHUNK DATA] " + chunk);
         }
 
@@ -67,113 +253,135 @@ public class ChunkHandler extends ApplicationAdapter {
     }
 
     /**
-     * Generates a chunk landscape model.
+     * Builds the mesh data of the chunks on all cores and waits for it, then uploads it here on the render thread.
      *
-     * @param texture The texture to paint on this model.
-     * @param color   The color we want to apply to the texture.
-     * @param chunkX  The X location of this chunk.
-     * @param chunkZ  The Z location of this chunk.
-     * @return A model that represents a landscape.
-     */
-    @SuppressWarnings("PointlessArithmeticExpression")
-    private Model generateChunkModel(Texture texture, Color color, int chunkX, int chunkZ) {
-        // Define the attributes for this model
-        VertexAttribute position = new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE);
-        VertexAttribute colorPacked = new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE);
-        VertexAttribute textureCoordinates = new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0");
-
-        // Init vertices array
-        final int quadVertices = 4; // A quad has 4 vertices, one at each corner
-        float[] vertices = new float[(position.numComponents + colorPacked.numComponents + textureCoordinates.numComponents) * quadVertices * CHUNK_SIZE * CHUNK_SIZE];
-
-        // Populate the vertices array with data
-        int vertexOffset = 0;
-        for (int x = 0; x < CHUNK_SIZE; x++) {
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-
-                int tileX = x + chunkX * CHUNK_SIZE;
-                int tileZ = z + chunkZ * CHUNK_SIZE;
-
-                float y0 = heightmapProcessor.getHeight(tileX, tileZ);               // [0,0] - North West Corner
-                float y1 = heightmapProcessor.getHeight(tileX, tileZ + 1);        // [0,1] - South West Corner
-                float y2 = heightmapProcessor.getHeight(tileX + 1, tileZ);        // [1,0] - North East Corner
-                float y3 = heightmapProcessor.getHeight(tileX + 1, tileZ + 1); // [1,1] - South East Corner
-
-                vertexOffset = floorTile(vertices, vertexOffset, x, z, y0, y1, y2, y3, color, new TextureRegion(texture));
-            }
+     * @param chunkKeys The {@link Chunk.Key#pack(int, int) packed keys} of the chunks to load.
+     */
+    private void loadChunks(LongArray chunkKeys) {
+        if (chunkKeys.size == 0) return;
+
+        // Read in the saved heights first, the meshing threads only read the heightfield
+        for (int i = 0; i < chunkKeys.size; i++) {
+            regionStorage.loadChunkCorners(Chunk.Key.unpackX(chunkKeys.get(i)), Chunk.Key.unpackZ(chunkKeys.get(i)));
+        }
+
+        for (ChunkMeshData meshData : chunkMesher.generateChunkMeshData(ForkJoinPool.commonPool(), chunkKeys)) {
+            uploadChunk(meshData);
         }
+        metrics.setResidency(residencyCache.getResidentChunks(), residencyCache.getResidentBytes() + meshPool.getIndexBufferBytes());
+    }
 
-        // Generate the indices
-        short[] indices = new short[6 * CHUNK_SIZE * CHUNK_SIZE];
-        short j = 0;
-        for (int i = 0; i < indices.length; i += 6, j += 4) {
-            indices[i + 0] = (short) (j + 2);
-            indices[i + 1] = (short) (j + 1);
-            indices[i + 2] = (short) (j + 3);
-            indices[i + 3] = (short) (j + 0);
-            indices[i + 4] = (short) (j + 3);
-            indices[i + 5] = (short) (j + 1);
+    /**
+     * Uploads the chunks the {@link ChunkScheduler} finished meshing, at most {@link Constants#UPLOAD_CHUNKS_PER_FRAME}
+     * chunks or {@link Constants#UPLOAD_BYTES_PER_FRAME} bytes, so streaming chunks in doesn't stall the frame.
+     * Call this once per frame.
+     *
+     * @return True if any chunk was loaded, so the rendered chunks must be gathered again.
+     */
+    public boolean uploadChunks() {
+        if (chunkScheduler == null) return false;
+
+        int chunks = 0;
+        long bytes = 0;
+        ChunkMeshData meshData;
+        while (chunks < UPLOAD_CHUNKS_PER_FRAME && (meshData = chunkScheduler.peek()) != null) {
+            // The first chunk always goes, so a chunk over the budget can't block the queue
+            long size = meshData.estimateBytes();
+            if (chunks > 0 && bytes + size > UPLOAD_BYTES_PER_FRAME) break;
+            chunkScheduler.remove();
+
+            uploadChunk(meshData);
+            bytes += size;
+            chunks++;
         }
+        if (chunks == 0) return false;
+        metrics.setResidency(residencyCache.getResidentChunks(), residencyCache.getResidentBytes() + meshPool.getIndexBufferBytes());
+        return true;
+    }
 
-        // Create the mesh
-        Mesh mesh = new Mesh(true, vertices.length, indices.length, position, colorPacked, textureCoordinates);
-        mesh.setVertices(vertices);
-        mesh.setIndices(indices);
+    private void uploadChunk(ChunkMeshData meshData) {
+        Chunk chunk = Objects.requireNonNull(getChunk(meshData.getChunkX(), meshData.getChunkZ(), false));
+        if (chunk.isLoaded()) return;
 
-        // Create the MeshPart I'd
-        stringBuilder.append(chunkX);
-        stringBuilder.append(SLASH);
-        stringBuilder.append(chunkZ);
+        long uploadStart = System.nanoTime();
+        chunk.setModel(uploadChunkModel(meshData), meshData.getVertices(), meshLayout, vertexFormat, meshPool);
+        chunk.setLodModel(uploadLodModel(meshData), meshData.getLodVertices());
+        if (mergeFlatTiles) setMergedIndices(chunk, meshData.getIndices());
+        metrics.recordChunk(meshData.getMeshNanos(), System.nanoTime() - uploadStart);
+
+        chunk.setBounds(meshData.getMinHeight(), meshData.getMaxHeight());
+        residencyCache.add(chunk, visibilityPass);
+    }
 
-        // Create the MeshPart
-        MeshPart meshPart = new MeshPart(stringBuilder.toStringAndClear(), mesh, 0, 6 * CHUNK_SIZE * CHUNK_SIZE, GL30.GL_TRIANGLES);
+    /**
+     * Uploads the mesh data of a chunk to the GPU. This is the GL half of chunk generation,
+     * so it must be called on the render thread.
+     *
+     * @param meshData The vertices and indices created by the {@link ChunkMesher}.
+     * @return A model that represents a landscape, with one part per sub-mesh.
+     */
+    private Model uploadChunkModel(ChunkMeshData meshData) {
+        long stitchKey = ChunkLod.getStitchKey(meshLayout, 0, NO_NEIGHBOURS);
+        modelBuilder.begin();
+        modelBuilder.node();
+        for (int subMesh = 0; subMesh < meshData.getIndices().length; subMesh++) {
+            // Merged tiles are the only indices a chunk has on its own, shared grid meshes are tinted instead of using the atlas
+            short[] indices = meshData.getIndices()[subMesh];
+            ChunkMesh mesh = uploadSubMesh(meshData.getVertices(), 0, subMesh);
+            if (mergeFlatTiles) mesh.setIndices(indices);
+            else mesh.shareIndices(meshPool.getIndexBuffer(ChunkLod.getSubMeshKey(stitchKey, subMesh), indices));
+            modelBuilder.part(new MeshPart(getMeshPartId(meshData, 0, subMesh), mesh, 0, indices.length, GL30.GL_TRIANGLES),
+                meshLayout == ChunkMeshLayout.PER_TILE ? atlasMaterial : material);
+        }
+        return modelBuilder.end();
+    }
 
-        // Create a model out of the MeshPart
+    /**
+     * Uploads the coarser levels of detail of a chunk to the GPU. Each level gets its own node
+     * in the model, named after the level. Must be called on the render thread.
+     *
+     * @param meshData The vertices created by the {@link ChunkMesher}.
+     * @return A model holding every coarser level of detail.
+     */
+    private Model uploadLodModel(ChunkMeshData meshData) {
         modelBuilder.begin();
-        modelBuilder.part(meshPart, new Material("texture", TextureAttribute.createDiffuse(texture)));
+        for (int level = 1; level < chunkGrid.getLevelCount(); level++) {
+            short[][] indices = chunkLod.getIndices(meshLayout, level, NO_NEIGHBOURS);
+            long stitchKey = ChunkLod.getStitchKey(meshLayout, level, NO_NEIGHBOURS);
+
+            modelBuilder.node().id = Integer.toString(level);
+            for (int subMesh = 0; subMesh < indices.length; subMesh++) {
+                ChunkMesh mesh = uploadSubMesh(meshData.getLodVertices()[level], level, subMesh);
+                mesh.shareIndices(meshPool.getIndexBuffer(ChunkLod.getSubMeshKey(stitchKey, subMesh), indices[subMesh]));
+                modelBuilder.part(new MeshPart(getMeshPartId(meshData, level, subMesh), mesh, 0, indices[subMesh].length, GL30.GL_TRIANGLES), material);
+            }
+        }
         return modelBuilder.end();
     }
 
-    private int floorTile(float[] vertices, int vertexOffset, float x, float z, float y0, float y1, float y2, float y3, Color tileColor, TextureRegion textureRegion) {
-        final float color = Color.toFloatBits(tileColor.r, tileColor.g, tileColor.b, tileColor.a);
-        float u1 = textureRegion.getU();
-        float v1 = textureRegion.getV2();
-        float u2 = textureRegion.getU2();
-        float v2 = textureRegion.getV();
-
-        // Bottom Left [0,0]
-        vertices[vertexOffset++] = x;
-        vertices[vertexOffset++] = y0;
-        vertices[vertexOffset++] = z;
-        vertices[vertexOffset++] = color;
-        vertices[vertexOffset++] = u1;
-        vertices[vertexOffset++] = v1;
-
-        // Bottom Right [1,0]
-        vertices[vertexOffset++] = x + TILE_SIZE;
-        vertices[vertexOffset++] = y2;
-        vertices[vertexOffset++] = z;
-        vertices[vertexOffset++] = color;
-        vertices[vertexOffset++] = u2;
-        vertices[vertexOffset++] = v1;
-
-        // Top Right [1,1]
-        vertices[vertexOffset++] = x + TILE_SIZE;
-        vertices[vertexOffset++] = y3;
-        vertices[vertexOffset++] = z + TILE_SIZE;
-        vertices[vertexOffset++] = color;
-        vertices[vertexOffset++] = u2;
-        vertices[vertexOffset++] = v2;
-
-        // Top Left [0,1]
-        vertices[vertexOffset++] = x;
-        vertices[vertexOffset++] = y1;
-        vertices[vertexOffset++] = z + TILE_SIZE;
-        vertices[vertexOffset++] = color;
-        vertices[vertexOffset++] = u1;
-        vertices[vertexOffset++] = v2;
-
-        return vertexOffset;
+    /**
+     * Creates the mesh of a sub-mesh, or reuses one of an unloaded chunk, and uploads its range of the vertices.
+     */
+    private ChunkMesh uploadSubMesh(float[] vertices, int level, int subMesh) {
+        int vertexSize = vertexFormat.getFloatsPerVertex();
+        int vertexCount = chunkGrid.getSubMeshVertexCount(meshLayout, level, subMesh);
+        ChunkMesh mesh = meshPool.obtainMesh(vertexCount, vertexFormat.getAttributes());
+        mesh.setVertices(vertices, chunkGrid.getFirstVertex(meshLayout, level, subMesh) * vertexSize, vertexCount * vertexSize);
+        return mesh;
+    }
+
+    /**
+     * @return The MeshPart id of a sub-mesh, chunk X/Z/level/sub-mesh.
+     */
+    private String getMeshPartId(ChunkMeshData meshData, int level, int subMesh) {
+        stringBuilder.append(meshData.getChunkX());
+        stringBuilder.append(SLASH);
+        stringBuilder.append(meshData.getChunkZ());
+        stringBuilder.append(SLASH);
+        stringBuilder.append(level);
+        stringBuilder.append(SLASH);
+        stringBuilder.append(subMesh);
+        return stringBuilder.toStringAndClear();
     }
 
     /**
@@ -186,139 +394,387 @@ public class ChunkHandler extends ApplicationAdapter {
         int worldX = 2;
         int worldZ = 2;
 
-        // Get chunk coordinates
-        int chunkX = (int) (worldX / (float) CHUNK_SIZE);
-        int chunkZ = (int) (worldZ / (float) CHUNK_SIZE);
+        // Lazy modify mesh, the change is uploaded on the next frame
+        resizeTile(worldX, worldZ, 0, 5, 0, 0, 5, 0, 0, 5, 0, 0, 5, 0);
+        paintTile(worldX, worldZ, TileType.SAND);
+    }
+
+    /**
+     * Changes the type of a world tile. The tile layer is updated, so the change is saved and
+     * survives the chunk being unloaded. If the chunk is loaded only the vertices of the tile
+     * are changed, and uploaded with every other edit by the next {@link #flushEdits()}.
+     *
+     * @param worldX The world X tile we want to paint.
+     * @param worldZ The world Z tile we want to paint.
+     * @param type   The new type of the tile.
+     * @return False if the tile is outside the world, true otherwise.
+     */
+    public boolean paintTile(int worldX, int worldZ, TileType type) {
+        regionStorage.editCorner(worldX, worldZ);
+        if (!regionStorage.getTileLayer().setTile(worldX, worldZ, type)) return false;
+        chunkScheduler.markEdited(worldX, worldZ);
 
+        int chunkX = Math.floorDiv(worldX, chunkSize);
+        int chunkZ = Math.floorDiv(worldZ, chunkSize);
         Chunk chunk = getChunk(chunkX, chunkZ, false);
+        if (chunk == null || !chunk.isLoaded()) return true;
+
+        int localX = worldX - chunkX * chunkSize;
+        int localZ = worldZ - chunkZ * chunkSize;
+
+        // Per tile meshes point the 4 vertices of the tile at its atlas cell
+        if (meshLayout == ChunkMeshLayout.PER_TILE) {
+            for (TileCorner corner : TileCorner.values()) {
+                int vertex = chunkGrid.getCornerVertex(meshLayout, localX, localZ, corner);
+                float u = corner.getOffsetX() == 0 ? type.getU1() : type.getU2();
+                float v = corner.getOffsetZ() == 0 ? type.getV1() : type.getV2();
+                vertexFormat.setTexCoords(chunk.getVertices(), vertex, u, v);
+                if (chunk.markVertexDirty(0, vertex)) dirtyChunks.add(chunk);
+            }
+        }
 
-        // Get the local tile on the chunk (0 - CHUNK_SIZE)
-        int localX = worldX - chunkX * CHUNK_SIZE;
-        int localZ = worldZ - chunkZ * CHUNK_SIZE;
+        // Grid vertices take the tint of the tile they are the first corner of, the last tiles also tint the far edge
+        int lastX = localX == chunkSize - 1 ? chunkSize : localX;
+        int lastZ = localZ == chunkSize - 1 ? chunkSize : localZ;
+        int firstLevel = meshLayout == ChunkMeshLayout.SHARED_GRID ? 0 : 1;
+        for (int level = firstLevel; level < chunkGrid.getLevelCount(); level++) {
+            int step = ChunkLod.getStep(level);
+            for (int cornerX = localX; cornerX <= lastX; cornerX++) {
+                for (int cornerZ = localZ; cornerZ <= lastZ; cornerZ++) {
+                    if (cornerX % step != 0 || cornerZ % step != 0) continue;
+                    int vertex = chunkGrid.getVertex(ChunkMeshLayout.SHARED_GRID, step, cornerX, cornerZ);
+                    vertexFormat.setColor(chunk.getLodVertices()[level], vertex, type.getPackedTint());
+                    if (chunk.markVertexDirty(level, vertex)) dirtyChunks.add(chunk);
+                }
+            }
+        }
+        return true;
+    }
 
-        // Grab the mesh from this chunk
-        ModelInstance modelInstance = Objects.requireNonNull(chunk).getModelInstance();
-        Mesh mesh = modelInstance.model.meshes.get(0);
+    /**
+     * Resizes a world tile. The X and Z moves are made to the chunks copy of its vertices, the
+     * corner heights go through the heightfield to every loaded chunk sharing the corner, so tiles on
+     * a chunk border don't open a crack. Everything is uploaded with every other edit by the next
+     * {@link #flushEdits()}. Only the corner heights are saved, the X and Z moves don't fit in the heightfield.
+     *
+     * @param worldX The world X tile we want to edit.
+     * @param worldZ The world Z tile we want to edit.
+     * @return False if the tile's chunk is not loaded, true otherwise.
+     * @see #resizeRectangleVertex
+     */
+    public boolean resizeTile(int worldX, int worldZ, int x0, float y0, int z0, int x1, float y1, int z1, int x2, float y2, int z2, int x3, float y3, int z3) {
+        // Get chunk coordinates, rounded down so negative tiles find no chunk instead of chunk 0
+        int chunkX = Math.floorDiv(worldX, chunkSize);
+        int chunkZ = Math.floorDiv(worldZ, chunkSize);
 
-        // Lazy modify mesh
-        Mesh mesh1 = resizeRectangleVertex(mesh, localX, localZ, 0, 5, 0, 0, 5, 0, 0, 5, 0, 0, 5, 0);
+        Chunk chunk = getChunk(chunkX, chunkZ, false);
+        if (chunk == null || !chunk.isLoaded()) return false;
 
-        // Rebuild the mesh
-        MeshPart meshPart = new MeshPart(stringBuilder.toStringAndClear(), mesh1, 0, 6 * CHUNK_SIZE * CHUNK_SIZE, GL30.GL_TRIANGLES);
+        // Get the local tile on the chunk (0 - chunk size)
+        int localX = worldX - chunkX * chunkSize;
+        int localZ = worldZ - chunkZ * chunkSize;
 
-        // Create a model out of the MeshPart
-        modelBuilder.begin();
-        modelBuilder.part(meshPart, modelInstance.getMaterial("texture"));
-        Model model = modelBuilder.end();
+        resizeRectangleVertex(chunk, localX, localZ, x0, z0, x1, z1, x2, z2, x3, z3);
 
-        // Set and cache the model
-        chunk.setModel(model);
+        boolean ownStroke = !editJournal.isRecording();
+        if (ownStroke) editJournal.beginStroke();
+        raiseCorner(worldX, worldZ, TileCorner.NORTH_WEST, y0);
+        raiseCorner(worldX, worldZ, TileCorner.SOUTH_WEST, y1);
+        raiseCorner(worldX, worldZ, TileCorner.NORTH_EAST, y2);
+        raiseCorner(worldX, worldZ, TileCorner.SOUTH_EAST, y3);
+        if (ownStroke) editJournal.endStroke();
+        return true;
     }
 
     /**
-     * Resizes a tile inside the mesh. This is done by modifying the position attribute of the vertex.
-     *
-     * @param mesh   The mesh we want to edit.
-     * @param localX The local X tile we want to edit. Must be between 0 - CHUNK_SIZE.
-     * @param localZ The local X tile we want to edit. Must be between 0 - CHUNK_SIZE.
-     * @param x0     First corner X
-     * @param y0     First corner Y
-     * @param z0     First corner Z
-     * @param x1     Second corner X
-     * @param y1     Second corner Y
-     * @param z1     Second corner Z
-     * @param x2     Third corner X
-     * @param y2     Third corner Y
-     * @param z2     Third corner Z
-     * @param x3     Forth corner X
-     * @param y3     Forth corner Y
-     * @param z3     Forth corner Z
-     * @return A mesh containing the changes made here.
+     * Raises a corner of a world tile like {@link #commitEdit} does, in the heightfield and every loaded chunk sharing it.
      */
-    @SuppressWarnings("SameParameterValue")
-    private Mesh resizeRectangleVertex(Mesh mesh, int localX, int localZ, int x0, float y0, int z0, int x1, float y1, int z1, int x2, float y2, int z2, int x3, float y3, int z3) {
+    private void raiseCorner(int worldX, int worldZ, TileCorner corner, float rise) {
+        int cornerX = worldX + corner.getOffsetX();
+        int cornerZ = worldZ + corner.getOffsetZ();
+
+        // Load the saved heights of the chunk first, or the old height read would be the unloaded 0
+        regionStorage.editCorner(cornerX, cornerZ);
+        float oldHeight = heightmapProcessor.getHeight(cornerX, cornerZ);
+        setCorner(cornerX, cornerZ, oldHeight + rise);
+        editJournal.record(cornerX, cornerZ, oldHeight, heightmapProcessor.getHeight(cornerX, cornerZ));
+    }
 
-        // Get the VertexAttributes. We need to know which ones are here.
-        // If we only want to edit the position, then we need to skip over the
-        // other VertexAttributes.
-        VertexAttributes vertexAttributes = mesh.getVertexAttributes();
-        int offset = vertexAttributes.getOffset(VertexAttributes.Usage.Position);
+    /**
+     * Starts a stroke, every edit until {@link #endStroke()} is undone at once.
+     * Edits made outside a stroke are a stroke of their own.
+     */
+    public void beginStroke() {
+        editJournal.beginStroke();
+    }
 
-        // Get the exact tile we want to edit
-        int attributesOffset = mesh.getVertexAttributes().vertexSize;
-        int tile = attributesOffset * (localX * CHUNK_SIZE + localZ);
+    public void endStroke() {
+        editJournal.endStroke();
+    }
+
+    /**
+     * Undoes the newest stroke of height edits. Only the changed corners are set back, and
+     * uploaded with every other edit by the next {@link #flushEdits()}. Tiles moved on X or Z
+     * by {@link #resizeTile} only get their heights back.
+     *
+     * @return False if there is nothing to undo.
+     */
+    public boolean undo() {
+        return editJournal.undo(heightmapProcessor, journalSetter);
+    }
 
-        // Calculate how big the vertices array should be
-        int vertCount = mesh.getNumVertices() * mesh.getVertexSize() / 4;
+    /**
+     * Redoes the newest undone stroke of height edits.
+     *
+     * @return False if there is nothing to redo.
+     * @see #undo()
+     */
+    public boolean redo() {
+        return editJournal.redo(heightmapProcessor, journalSetter);
+    }
 
-        // Get the vertex size
-        int vertexSize = mesh.getVertexSize() / 4;
+    /**
+     * Saves the heights of every chunk edited since the last save.
+     *
+     * @return The number of chunks written.
+     */
+    public int saveWorld() {
+        return regionStorage.save();
+    }
 
-        // Gets the vertices we want to edit
-        float[] vertices = new float[vertCount];
-        mesh.getVertices(vertices);
+    /**
+     * Uploads the edited vertex range of every changed chunk and refreshes their caches.
+     * Call this once per frame, so each chunk is uploaded once no matter how many tiles changed.
+     *
+     * @return True if any chunk changed, so the rendered chunks must be gathered again.
+     */
+    public boolean flushEdits() {
+        boolean remeshed = remeshChunks();
+        if (dirtyChunks.size == 0) return remeshed;
+
+        for (int i = 0; i < dirtyChunks.size; i++) {
+            Chunk chunk = dirtyChunks.get(i);
+            // Chunks unloaded or meshed again since they were edited already have the change, or get it when they load
+            if (!chunk.isLoaded() || !chunk.isDirty()) continue;
+            // Quads over the edited tiles split back into tiles, the rest stays merged
+            if (mergeFlatTiles) setMergedIndices(chunk, tileMerger.merge(chunk.getVertices(), vertexFormat, regionStorage.getTileLayer().getChunk(chunk.getChunkX(), chunk.getChunkZ())));
+            chunk.flushVertices();
+        }
+        dirtyChunks.clear();
+        return true;
+    }
 
-        // Corner [0,0] ///////////////////////////////////////
-        int vertex = TileCorner.NORTH_WEST.getVertexID() * vertexSize + tile;
-        int indexX = vertex + offset;
-        int indexY = vertex + 1 + offset;
-        int indexZ = vertex + 2 + offset;
+    /**
+     * Meshes the chunks changed by brushes again on all cores, and uploads them here in one pass.
+     * The new vertices go into the meshes the chunks already have, so they stay resident as they are.
+     * A chunk that was unloaded since is skipped, it is meshed from the new heights when it loads.
+     *
+     * @return True if any chunk was meshed again.
+     */
+    private boolean remeshChunks() {
+        if (remeshChunks.size == 0) return false;
 
-        float x = vertices[indexX];
-        float y = vertices[indexY];
-        float z = vertices[indexZ];
+        for (int i = remeshChunks.size - 1; i >= 0; i--) {
+            Chunk chunk = chunkIndex.get(remeshChunks.get(i));
+            if (chunk == null || !chunk.isLoaded()) remeshChunks.removeIndex(i);
+        }
+        for (ChunkMeshData meshData : chunkMesher.generateChunkMeshData(ForkJoinPool.commonPool(), remeshChunks)) {
+            Chunk chunk = getChunk(meshData.getChunkX(), meshData.getChunkZ(), false);
+            long uploadStart = System.nanoTime();
+            chunk.replaceVertices(meshData.getLodVertices());
+            if (mergeFlatTiles) setMergedIndices(chunk, meshData.getIndices());
+            metrics.recordChunk(meshData.getMeshNanos(), System.nanoTime() - uploadStart);
+            chunk.setBounds(meshData.getMinHeight(), meshData.getMaxHeight());
+        }
+        boolean remeshed = remeshChunks.size > 0;
+        remeshChunks.clear();
+        return remeshed;
+    }
 
-        // Grow/shrink the vertices
-        vertices[indexX] = x + x0;
-        vertices[indexY] = y + y0;
-        vertices[indexZ] = z + z0;
+    private void setMergedIndices(Chunk chunk, short[][] indices) {
+        chunk.setMergedIndices(indices);
+        int triangles = 0;
+        for (short[] subMeshIndices : indices) triangles += subMeshIndices.length / 3;
+        metrics.recordTileMerge(triangles, 2 * chunkSize * chunkSize);
+    }
 
-        // Corner [0,1] ///////////////////////////////////////
-        vertex = TileCorner.SOUTH_WEST.getVertexID() * vertexSize + tile;
-        indexX = vertex + offset;
-        indexY = vertex + 1 + offset;
-        indexZ = vertex + 2 + offset;
+    /**
+     * Applies every corner height change of an edit. The heightfield is updated, so the change
+     * survives the chunk being unloaded, and so is every loaded chunk that shares the corner:
+     * a corner on a chunk border belongs to up to 4 chunks, and all of them are changed so no
+     * cracks appear. The changed chunks are uploaded once each by the next {@link #flushEdits()}.
+     *
+     * @param edit The edit to apply. It is cleared afterwards, so it can be reused.
+     */
+    public void commitEdit(TerrainEdit edit) {
+        boolean ownStroke = !editJournal.isRecording();
+        if (ownStroke) editJournal.beginStroke();
+        for (int i = 0; i < edit.size(); i++) {
+            int worldX = edit.getX(i);
+            int worldZ = edit.getZ(i);
+
+            // Load the saved heights of the chunk first, or the old height read would be the unloaded 0
+            regionStorage.editCorner(worldX, worldZ);
+            float oldHeight = heightmapProcessor.getHeight(worldX, worldZ);
+            float height = edit.getHeight(i);
+            if (edit.isRelative(i)) height += oldHeight;
+            setCorner(worldX, worldZ, height);
+            editJournal.record(worldX, worldZ, oldHeight, heightmapProcessor.getHeight(worldX, worldZ));
+        }
+        if (ownStroke) editJournal.endStroke();
+        edit.clear();
+    }
 
-        x = vertices[indexX];
-        y = vertices[indexY];
-        z = vertices[indexZ];
+    /**
+     * Applies a brush to the heightfield. Every loaded chunk under it is meshed again on all cores
+     * by the next {@link #flushEdits()}, however many times the brush was used this frame, which
+     * is much faster than editing each corner of a large brush in each chunk sharing it. Tiles of
+     * those chunks moved on X or Z by {@link #resizeTile} go back onto the grid.
+     *
+     * @param brush   The brush.
+     * @param centerX The world X position of the center of the brush.
+     * @param centerZ The world Z position of the center of the brush.
+     */
+    public void applyBrush(TerrainBrush brush, float centerX, float centerZ) {
+        // The chunks owning a corner under the brush, and the chunks that have it as their last corner
+        int minChunkX = Math.floorDiv(brush.getMinX(centerX) - 1, chunkSize);
+        int minChunkZ = Math.floorDiv(brush.getMinZ(centerZ) - 1, chunkSize);
+        int maxChunkX = Math.floorDiv(brush.getMaxX(centerX) + 1, chunkSize);
+        int maxChunkZ = Math.floorDiv(brush.getMaxZ(centerZ) + 1, chunkSize);
+
+        // The brush reads the saved heights, and the ring of corners around it
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) regionStorage.loadChunk(chunkX, chunkZ);
+        }
+        brush.apply(heightmapProcessor, centerX, centerZ, brushEdit);
+        if (brushEdit.size() == 0) return;
+
+        boolean ownStroke = !editJournal.isRecording();
+        if (ownStroke) editJournal.beginStroke();
+        for (int i = 0; i < brushEdit.size(); i++) {
+            int worldX = brushEdit.getX(i);
+            int worldZ = brushEdit.getZ(i);
+            regionStorage.editCorner(worldX, worldZ);
+            float oldHeight = heightmapProcessor.getHeight(worldX, worldZ);
+            heightmapProcessor.setHeight(worldX, worldZ, brushEdit.getHeight(i));
+            terrainQuery.invalidateCorner(worldX, worldZ);
+            editJournal.record(worldX, worldZ, oldHeight, heightmapProcessor.getHeight(worldX, worldZ));
+        }
+        if (ownStroke) editJournal.endStroke();
+        brushEdit.clear();
+        chunkScheduler.markEdited(brush.getMinX(centerX), brush.getMinZ(centerZ), brush.getMaxX(centerX), brush.getMaxZ(centerZ));
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                Chunk chunk = getChunk(chunkX, chunkZ, false);
+                if (chunk == null || !chunk.isLoaded()) continue;
+                long key = Chunk.Key.pack(chunkX, chunkZ);
+                if (!remeshChunks.contains(key)) remeshChunks.add(key);
+            }
+        }
+    }
 
-        // Grow/shrink the vertices
-        vertices[indexX] = x + x1;
-        vertices[indexY] = y + y1;
-        vertices[indexZ] = z + z1;
+    /**
+     * Sets a corner height in the heightfield and in every loaded chunk that shares the corner.
+     */
+    private void setCorner(int worldX, int worldZ, float height) {
+        regionStorage.editCorner(worldX, worldZ);
+        heightmapProcessor.setHeight(worldX, worldZ, height);
+        terrainQuery.invalidateCorner(worldX, worldZ);
+        chunkScheduler.markEdited(worldX, worldZ);
+
+        // A corner on a chunk border is also the last corner of the chunk before it
+        int maxChunkX = Math.floorDiv(worldX, chunkSize);
+        int maxChunkZ = Math.floorDiv(worldZ, chunkSize);
+        int minChunkX = worldX == maxChunkX * chunkSize ? maxChunkX - 1 : maxChunkX;
+        int minChunkZ = worldZ == maxChunkZ * chunkSize ? maxChunkZ - 1 : maxChunkZ;
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                Chunk chunk = getChunk(chunkX, chunkZ, false);
+                if (chunk == null || !chunk.isLoaded()) continue;
+                setCornerHeight(chunk, worldX - chunkX * chunkSize, worldZ - chunkZ * chunkSize, height);
+            }
+        }
+    }
 
-        // Corner [1,0] ///////////////////////////////////////
-        vertex = TileCorner.NORTH_EAST.getVertexID() * vertexSize + tile;
-        indexX = vertex + offset;
-        indexY = vertex + 1 + offset;
-        indexZ = vertex + 2 + offset;
+    /**
+     * Sets the height of a tile corner in every level of detail of a chunk that has it.
+     *
+     * @param chunk  The chunk to change.
+     * @param localX The local X corner. Must be between 0 - chunk size, inclusive.
+     * @param localZ The local Z corner. Must be between 0 - chunk size, inclusive.
+     * @param height The new height.
+     */
+    private void setCornerHeight(Chunk chunk, int localX, int localZ, float height) {
+        if (meshLayout == ChunkMeshLayout.PER_TILE) {
+            // Every tile touching the corner has its own vertex for it
+            for (int tileX = Math.max(0, localX - 1); tileX <= Math.min(chunkSize - 1, localX); tileX++) {
+                for (int tileZ = Math.max(0, localZ - 1); tileZ <= Math.min(chunkSize - 1, localZ); tileZ++) {
+                    TileCorner corner = TileCorner.of(localX - tileX, localZ - tileZ);
+                    setVertexHeight(chunk, 0, chunkGrid.getCornerVertex(meshLayout, tileX, tileZ, corner), height);
+                }
+            }
+        } else {
+            setVertexHeight(chunk, 0, chunkGrid.getVertex(meshLayout, 1, localX, localZ), height);
+        }
+        setLodHeights(chunk, localX, localZ, height);
+    }
 
-        x = vertices[indexX];
-        y = vertices[indexY];
-        z = vertices[indexZ];
+    /**
+     * Sets the height of a tile corner in the coarser levels of detail of a chunk, only every step'th corner is in them.
+     */
+    private void setLodHeights(Chunk chunk, int localX, int localZ, float height) {
+        for (int level = 1; level < chunkGrid.getLevelCount(); level++) {
+            int step = ChunkLod.getStep(level);
+            if (localX % step != 0 || localZ % step != 0) continue;
+            setVertexHeight(chunk, level, chunkGrid.getVertex(ChunkMeshLayout.SHARED_GRID, step, localX, localZ), height);
+        }
+    }
 
-        // Grow/shrink the vertices
-        vertices[indexX] = x + x2;
-        vertices[indexY] = y + y2;
-        vertices[indexZ] = z + z2;
+    private void setVertexHeight(Chunk chunk, int level, int vertex, float height) {
+        vertexFormat.setHeight(chunk.getLodVertices()[level], vertex, height);
 
-        // Corner [1,1] ///////////////////////////////////////
-        vertex = TileCorner.SOUTH_EAST.getVertexID() * vertexSize + tile;
-        indexX = vertex + offset;
-        indexY = vertex + 1 + offset;
-        indexZ = vertex + 2 + offset;
+        if (chunk.markVertexDirty(level, vertex)) dirtyChunks.add(chunk);
+    }
 
-        x = vertices[indexX];
-        y = vertices[indexY];
-        z = vertices[indexZ];
+    /**
+     * Moves the corners of a tile inside the mesh on X and Z. This is done by modifying the position attribute of the vertex.
+     * With the {@link ChunkMeshLayout#SHARED_GRID} layout the corners are shared, so the
+     * neighbouring tiles are resized with it. Heights are set by {@link #setCorner} instead.
+     *
+     * @param chunk  The chunk we want to edit.
+     * @param localX The local X tile we want to edit. Must be between 0 - chunk size.
+     * @param localZ The local X tile we want to edit. Must be between 0 - chunk size.
+     * @param x0     First corner X
+     * @param z0     First corner Z
+     * @param x1     Second corner X
+     * @param z1     Second corner Z
+     * @param x2     Third corner X
+     * @param z2     Third corner Z
+     * @param x3     Forth corner X
+     * @param z3     Forth corner Z
+     */
+    private void resizeRectangleVertex(Chunk chunk, int localX, int localZ, int x0, int z0, int x1, int z1, int x2, int z2, int x3, int z3) {
+        moveVertex(chunk, chunkGrid.getCornerVertex(meshLayout, localX, localZ, TileCorner.NORTH_WEST), x0, z0);  // Corner [0,0]
+        moveVertex(chunk, chunkGrid.getCornerVertex(meshLayout, localX, localZ, TileCorner.SOUTH_WEST), x1, z1);  // Corner [0,1]
+        moveVertex(chunk, chunkGrid.getCornerVertex(meshLayout, localX, localZ, TileCorner.NORTH_EAST), x2, z2);  // Corner [1,0]
+        moveVertex(chunk, chunkGrid.getCornerVertex(meshLayout, localX, localZ, TileCorner.SOUTH_EAST), x3, z3);  // Corner [1,1]
+    }
 
-        // Grow/shrink the vertices
-        vertices[indexX] = x + x3;
-        vertices[indexY] = y + y3;
-        vertices[indexZ] = z + z3;
+    /**
+     * Grows/shrinks a vertex on X and Z in the chunks copy of its vertices and marks it for upload.
+     *
+     * @param chunk  The chunk that owns the vertex.
+     * @param vertex The index of the vertex, counted in vertices.
+     */
+    private void moveVertex(Chunk chunk, int vertex, float x, float z) {
+        // The format knows where the position is stored, and how
+        float[] vertices = chunk.getVertices();
+        Vector3 position = vertexFormat.getPosition(vertices, vertex, tmpPosition);
+        vertexFormat.setPosition(vertices, vertex, position.x + x, position.y, position.z + z);
 
-        return mesh.updateVertices(offset, vertices);
+        if (chunk.markVertexDirty(0, vertex)) dirtyChunks.add(chunk);
     }
 
     /**
@@ -329,55 +785,144 @@ public class ChunkHandler extends ApplicationAdapter {
      * @param createChunk if true, we will create a chunk if it doesn't exist
      * @return A world chunk.
      */
-    private Chunk getChunk(int x, int z, boolean createChunk) {
-        int hashCode = x * 31 + z;
-        for (Map.Entry<Chunk.Key, Chunk> chunkEntry : chunkConcurrentMap.entrySet()) {
-            Chunk.Key key = chunkEntry.getKey();
-            Chunk chunk = chunkEntry.getValue();
-            if (key.hashCode() == hashCode) return chunk;
-        }
+    Chunk getChunk(int x, int z, boolean createChunk) {
+        long key = Chunk.Key.pack(x, z);
+        Chunk chunk = chunkIndex.get(key);
+        if (chunk != null || !createChunk) return chunk;
 
-        if (!createChunk) return null;
         // No chunk exists, create a new one
-        Chunk chunk = new Chunk(x, z);
-        System.out.println("[NEW CHUNK] Location: " + x + SLASH + z);
-        chunkConcurrentMap.put(new Chunk.Key(x, z), chunk);
+        chunk = new Chunk(x, z, chunkGrid);
+        chunkIndex.put(key, chunk);
         return chunk;
     }
 
     @Override
     public void dispose() {
+        if (chunkScheduler != null) chunkScheduler.cancelAll();
+        if (regionStorage != null) {
+            regionStorage.save();
+            regionStorage.dispose();
+        }
         heightmapProcessor.dispose();
 
-        for (Chunk chunk : chunkConcurrentMap.values()) {
-            if (chunk != null && chunk.getModel() != null) chunk.getModel().dispose();
+        for (Chunk chunk : chunkIndex.values()) {
+            if (chunk != null) chunk.unload();
         }
+
+        regionBatcher.dispose();
+        meshPool.dispose();
+        if (texture != null) texture.dispose();
+        if (atlasTexture != null) atlasTexture.dispose();
     }
 
     /**
      * This is going to get the nearby chunks and only render those. This isn't the best way to do this
      * and this should only be considered a hack.
+     * <p>
+     * Every chunk is drawn at a level of detail picked by its distance to the camera, and
+     * stitched to any neighbour drawn at a coarser level. Chunks outside the camera frustum are not loaded.
+     * <p>
+     * Loaded chunks go to the {@link #regionBatcher}, which culls whole regions, so turning the camera
+     * does not change what is merged. Only regions whose chunks changed are merged again.
+     *
+     * @param uncached Gathers the visible chunks whose {@link ChunkVertexFormat} a cache can't merge, they are rendered as they are.
      */
-    public void getNearbyChunks(ModelCache cache) {
+    public void getNearbyChunks(Array<RenderableProvider> uncached) {
+        visibilityPass++;
+        regionBatcher.begin();
 
-        int camX = (int) camera.position.x;
-        int camZ = (int) camera.position.z;
-        int chunkX = camX / CHUNK_SIZE;
-        int chunkZ = camZ / CHUNK_SIZE;
+        int chunkX = getCurrentChunkX();
+        int chunkZ = getCurrentChunkZ();
+        int viewRadius = worldConfig.getViewRadius();
 
-        for (int x = chunkX - CHUNK_VIEW_RADIUS; x < chunkX + CHUNK_VIEW_RADIUS + 1; x++) {
-            for (int z = chunkZ - CHUNK_VIEW_RADIUS; z < chunkZ + CHUNK_VIEW_RADIUS + 1; z++) {
-                if (x < 0 || z < 0) continue; // No negative chunks or models instances exist here (in this project)...
+        // Pick the level of every chunk in view first, the stitching depends on the neighbours.
+        // Visible chunks that were unloaded are queued to be generated again in the background.
+        for (int x = 0; x < viewDiameter; x++) {
+            for (int z = 0; z < viewDiameter; z++) {
+                viewLevels[x * viewDiameter + z] = chunkLod.getLevel(chunkX - viewRadius + x, chunkZ - viewRadius + z, camera.position.x, camera.position.z);
 
-                Chunk chunk = getChunk(x, z, false);
+                Chunk chunk = getVisibleChunk(chunkX - viewRadius + x, chunkZ - viewRadius + z);
                 if (chunk == null) continue;
-
-                ModelCache modelCache = chunk.getModelCache();
-                if (modelCache == null) continue;
-
-                cache.add(modelCache);
+                if (chunk.isLoaded()) residencyCache.touch(chunk, visibilityPass);
+                else chunkScheduler.schedule(Chunk.Key.pack(chunk.getChunkX(), chunk.getChunkZ()));
+            }
+        }
+        chunkScheduler.update(camera.position.x, camera.position.z);
+
+        for (int x = chunkX - viewRadius; x < chunkX + viewRadius + 1; x++) {
+            for (int z = chunkZ - viewRadius; z < chunkZ + viewRadius + 1; z++) {
+                Chunk chunk = x < 0 || z < 0 ? null : getChunk(x, z, false);
+                if (chunk == null || !chunk.isLoaded()) continue;
+
+                int viewX = x - chunkX + viewRadius;
+                int viewZ = z - chunkZ + viewRadius;
+                int level = viewLevels[viewX * viewDiameter + viewZ];
+
+                neighbourLevels[ChunkLod.SOUTH] = getViewLevel(viewX, viewZ - 1, level);
+                neighbourLevels[ChunkLod.NORTH] = getViewLevel(viewX, viewZ + 1, level);
+                neighbourLevels[ChunkLod.WEST] = getViewLevel(viewX - 1, viewZ, level);
+                neighbourLevels[ChunkLod.EAST] = getViewLevel(viewX + 1, viewZ, level);
+
+                long stitchKey = ChunkLod.getStitchKey(meshLayout, level, neighbourLevels);
+                if (chunk.getLodStitchKey(level) != stitchKey) {
+                    // Merged tiles don't line up with stitched edges, so a stitched chunk draws every tile
+                    boolean merged = level == 0 && chunk.getMergedIndices() != null && stitchKey == ChunkLod.getStitchKey(meshLayout, 0, NO_NEIGHBOURS);
+                    short[][] indices = merged ? chunk.getMergedIndices() : chunkLod.getIndices(meshLayout, level, neighbourLevels);
+                    chunk.setLodIndices(level, stitchKey, indices, merged ? null : meshPool);
+                }
+
+                if (vertexFormat.isCacheable()) regionBatcher.add(chunk, level);
+                else if (getVisibleChunk(x, z) != null) uncached.add(chunk.getRenderable(level));
             }
         }
+        regionBatcher.end();
+    }
+
+    /**
+     * Gets a chunk if it is inside the camera frustum.
+     *
+     * @return The chunk, or null if it doesn't exist or is out of view.
+     */
+    private Chunk getVisibleChunk(int x, int z) {
+        if (x < 0 || z < 0) return null; // No negative chunks or models instances exist here (in this project)...
+
+        Chunk chunk = getChunk(x, z, false);
+        if (chunk == null) return null;
+
+        // Skip chunks outside the camera view
+        if (!camera.frustum.boundsInFrustum(chunk.getBoundingBox())) return null;
+        return chunk;
+    }
+
+    /**
+     * Gets the level of a chunk in view, or the fallback if it is outside the view.
+     */
+    private int getViewLevel(int viewX, int viewZ, int fallback) {
+        if (viewX < 0 || viewZ < 0 || viewX >= viewDiameter || viewZ >= viewDiameter) return fallback;
+        return viewLevels[viewX * viewDiameter + viewZ];
+    }
+
+    /**
+     * Checks to see if the nearby chunks need to be gathered again. That is when the camera
+     * has moved to another chunk, or turned far enough that other chunks may be in view.
+     *
+     * @return True if the visible chunks may have changed, false otherwise.
+     */
+    public boolean hasViewChanged() {
+        boolean leftChunk = hasLeftChunk();
+        boolean turned = hasCameraTurned();
+        return leftChunk || turned;
+    }
+
+    /**
+     * Checks to see if the camera has turned more than {@link Constants#CULL_REBUILD_ANGLE} since the last check.
+     *
+     * @return True if the camera has turned, false otherwise.
+     */
+    public boolean hasCameraTurned() {
+        if (camera.direction.dot(cullDirection) >= CULL_REBUILD_COS) return false;
+        cullDirection.set(camera.direction);
+        return true;
     }
 
     /**
@@ -386,8 +931,8 @@ public class ChunkHandler extends ApplicationAdapter {
      * @return True if the camera has moved to a new chunk, false otherwise.
      */
     public boolean hasLeftChunk() {
-        int newChunkX = getChunkTileX();
-        int newChunkZ = getChunkTileZ();
+        int newChunkX = getCurrentChunkX();
+        int newChunkZ = getCurrentChunkZ();
 
         if (currentChunkX == newChunkX && currentChunkZ == newChunkZ) return false;
         currentChunkX = newChunkX;
@@ -395,35 +940,87 @@ public class ChunkHandler extends ApplicationAdapter {
         return true;
     }
 
+    /**
+     * Gets the height of the ground, blended between the 4 corners of the tile it is on.
+     * Positions outside the world are moved onto its edge.
+     *
+     * @param worldX The world X position.
+     * @param worldZ The world Z position.
+     * @return The height.
+     */
+    public float getHeightAt(float worldX, float worldZ) {
+        return terrainQuery.getHeightAt(worldX, worldZ);
+    }
+
+    /**
+     * Gets the up facing normal of the ground. Positions outside the world are moved onto its edge.
+     *
+     * @param out The vector to store the normal in.
+     * @return The out vector.
+     */
+    public Vector3 getNormalAt(float worldX, float worldZ, Vector3 out) {
+        return terrainQuery.getNormalAt(worldX, worldZ, out);
+    }
+
+    /**
+     * Finds where a ray first hits the ground, up to the far plane of the camera.
+     * For the point under the cursor use {@code camera.getPickRay(screenX, screenY)}.
+     *
+     * @param ray The ray, with a normalized direction.
+     * @param out The vector to store the hit in.
+     * @return False if the ray misses.
+     */
+    public boolean intersectRay(Ray ray, Vector3 out) {
+        return terrainQuery.intersectRay(ray, camera.far, out);
+    }
+
+    /**
+     * Finds the world tile a ray first hits, up to the far plane of the camera.
+     *
+     * @param ray The ray, with a normalized direction.
+     * @param out Stores the world X and Z tile.
+     * @return False if the ray misses.
+     */
+    public boolean pickTile(Ray ray, GridPoint2 out) {
+        return terrainQuery.pickTile(ray, camera.far, tmpPosition, out);
+    }
+
     /**
      * Used for debug statements.
      */
     public int getCurrentChunkX() {
-        return (int) camera.position.x / CHUNK_SIZE;
+        // Rounded down like every edit path, so positions just below 0 are in chunk -1
+        return Math.floorDiv(MathUtils.floor(camera.position.x), chunkSize);
     }
 
     /**
      * Used for debug statements.
      */
     public int getCurrentChunkZ() {
-        return (int) camera.position.z / CHUNK_SIZE;
+        return Math.floorDiv(MathUtils.floor(camera.position.z), chunkSize);
+    }
+
+    /**
+     * Used for debug statements.
+     *
+     * @return The triangles the full detail mesh of the current chunk draws, 0 if it isn't loaded.
+     */
+    public int getCurrentChunkTriangles() {
+        Chunk chunk = getChunk(getCurrentChunkX(), getCurrentChunkZ(), false);
+        return chunk == null ? 0 : chunk.getTriangleCount();
     }
 
     /**
      * Used for debug statements.
      */
     public int getChunkTileX() {
-        int camX = (int) camera.position.x;
-        int chunkX = camX / CHUNK_SIZE;
-        return camX - chunkX * CHUNK_SIZE;
+        return Math.floorMod(MathUtils.floor(camera.position.x), chunkSize);
     }
 
     /**
      * Used for debug statements.
      */
     public int getChunkTileZ() {
-        int camZ = (int) camera.position.z;
-        int chunkZ = camZ / CHUNK_SIZE;
-        return camZ - chunkZ * CHUNK_SIZE;
+        return Math.floorMod(MathUtils.floor(camera.position.z), chunkSize);
     }
 }
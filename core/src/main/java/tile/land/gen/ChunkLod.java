@@ -0,0 +1,232 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ShortArray;
+
+import static tile.land.gen.Constants.LOD_DISTANCE;
+
+/**
+ * Level of detail (geomipmapping) support for chunks. Level 0 is the full resolution chunk mesh,
+ * every level after that skips twice as many tiles ({@code step = 2^level}).
+ * <p>
+ * Coarse levels are plain vertex grids, their triangles come from index buffers built here.
+ * When a neighbouring chunk is drawn at a coarser level, the border of the finer chunk is
+ * stitched to the neighbours edge vertices so no cracks appear between them. The index
+ * buffers only depend on the levels involved, so they are built once and shared by every chunk.
+ * They are split into the sub-meshes of the {@link ChunkGrid}, every triangle goes to the sub-mesh its
+ * center is in and indexes that sub-mesh's vertices.
+ */
+public class ChunkLod {
+    /**
+     * The chunk sides, used to look up the neighbouring chunk levels.
+     * South is -Z, north is +Z, west is -X and east is +X.
+     */
+    public static final int SOUTH = 0, NORTH = 1, WEST = 2, EAST = 3;
+
+    private final ChunkGrid grid;
+    private final int chunkSize;
+    private final LongMap<short[][]> indicesCache = new LongMap<>();
+    /**
+     * The indices of every sub-mesh being built.
+     */
+    private final ShortArray[] scratch;
+    private ChunkMeshLayout scratchLayout;
+    private int scratchLevel;
+
+    public ChunkLod(ChunkGrid grid) {
+        this.grid = grid;
+        this.chunkSize = grid.getChunkSize();
+        int subMeshes = 1;
+        for (ChunkMeshLayout layout : ChunkMeshLayout.values()) {
+            for (int level = 0; level < grid.getLevelCount(); level++) subMeshes = Math.max(subMeshes, grid.getSubMeshCount(layout, level));
+        }
+        scratch = new ShortArray[subMeshes];
+        for (int i = 0; i < subMeshes; i++) scratch[i] = new ShortArray();
+    }
+
+    /**
+     * @param level The level of detail.
+     * @return How many tiles one cell of this level covers.
+     */
+    public static int getStep(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * Picks the level of detail of a chunk by how far it is from the camera.
+     *
+     * @param chunkX The X location of the chunk.
+     * @param chunkZ The Z location of the chunk.
+     * @param camX   The X location of the camera.
+     * @param camZ   The Z location of the camera.
+     * @return The level of detail the chunk should be drawn at.
+     */
+    public int getLevel(int chunkX, int chunkZ, float camX, float camZ) {
+        float dx = (chunkX + 0.5f) * chunkSize - camX;
+        float dz = (chunkZ + 0.5f) * chunkSize - camZ;
+        float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        return Math.min(grid.getLevelCount() - 1, (int) (distance / (LOD_DISTANCE * chunkSize)));
+    }
+
+    /**
+     * Gets the indices of a chunk mesh drawn at the given level, stitched to its neighbours.
+     *
+     * @param layout         The vertex layout of the mesh. Only used by level 0, coarser levels are always grids.
+     * @param level          The level of detail of the mesh.
+     * @param neighbourLevel The level of the neighbour on every side, see {@link #SOUTH}, {@link #NORTH}, {@link #WEST} and {@link #EAST}.
+     *                       Neighbours at the same or a finer level do not need stitching.
+     * @return The shared indices of every sub-mesh, see {@link ChunkGrid#getSubMeshCount}. Do not modify them.
+     */
+    public short[][] getIndices(ChunkMeshLayout layout, int level, int[] neighbourLevel) {
+        long key = getStitchKey(layout, level, neighbourLevel);
+        short[][] indices = indicesCache.get(key);
+        if (indices != null) return indices;
+
+        int step = getStep(level);
+        int south = getStep(Math.max(level, neighbourLevel[SOUTH]));
+        int north = getStep(Math.max(level, neighbourLevel[NORTH]));
+        int west = getStep(Math.max(level, neighbourLevel[WEST]));
+        int east = getStep(Math.max(level, neighbourLevel[EAST]));
+
+        scratchLayout = level == 0 ? layout : ChunkMeshLayout.SHARED_GRID;
+        scratchLevel = level;
+        int subMeshes = grid.getSubMeshCount(scratchLayout, level);
+        for (int i = 0; i < subMeshes; i++) scratch[i].clear();
+        if (south == step && north == step && west == step && east == step) {
+            addCells(step, 0, chunkSize);
+        } else {
+            // Regular cells in the middle, a stitched strip along every side
+            addCells(step, step, chunkSize - step);
+            addStrip(step, SOUTH, south);
+            addStrip(step, NORTH, north);
+            addStrip(step, WEST, west);
+            addStrip(step, EAST, east);
+        }
+
+        indices = new short[subMeshes][];
+        for (int i = 0; i < subMeshes; i++) indices[i] = scratch[i].toArray();
+        indicesCache.put(key, indices);
+        return indices;
+    }
+
+    /**
+     * Packs everything that changes the indices of a chunk into one key.
+     */
+    public static long getStitchKey(ChunkMeshLayout layout, int level, int[] neighbourLevel) {
+        long key = level == 0 ? layout.ordinal() : ChunkMeshLayout.SHARED_GRID.ordinal();
+        key = key << 8 | level;
+        for (int side = 0; side < 4; side++) key = key << 8 | Math.max(level, neighbourLevel[side]);
+        return key;
+    }
+
+    /**
+     * @return The key of the indices of one sub-mesh, for the shared index buffers.
+     */
+    public static long getSubMeshKey(long stitchKey, int subMesh) {
+        return stitchKey << 16 | subMesh;
+    }
+
+    /**
+     * Adds two triangles for every cell in the square from min to max on both axes.
+     */
+    private void addCells(int step, int min, int max) {
+        for (int x = min; x < max; x += step) {
+            for (int z = min; z < max; z += step) {
+                if (step == 1 && scratchLayout == ChunkMeshLayout.PER_TILE) {
+                    // Keep every tile on its own vertices, so tiles can still be resized on their own
+                    int subMesh = grid.getSubMesh(scratchLayout, 0, x);
+                    int tile = grid.getLocalVertex(scratchLayout, 0, subMesh, x, z);
+                    addTriangle(subMesh, tile + 2, tile + 1, tile + 3);
+                    addTriangle(subMesh, tile, tile + 3, tile + 1);
+                } else {
+                    addTriangle(x + step, z + step, x + step, z, x, z + step);
+                    addTriangle(x, z, x, z + step, x + step, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the strip between a chunk side and the first inner row of vertices. The side only uses
+     * every outerStep'th vertex, so it lines up with a coarser neighbour. Both rows are walked
+     * at once, always advancing the row whose next vertex comes first.
+     */
+    private void addStrip(int step, int side, int outerStep) {
+        int outerCount = chunkSize / outerStep + 1;
+        int innerCount = chunkSize / step - 1;
+
+        int outer = 0;
+        int inner = 0;
+        while (outer < outerCount - 1 || inner < innerCount - 1) {
+            boolean advanceOuter;
+            if (outer == outerCount - 1) advanceOuter = false;
+            else if (inner == innerCount - 1) advanceOuter = true;
+            else advanceOuter = (outer + 1) * outerStep <= (inner + 2) * step;
+
+            int o = outer * outerStep;
+            int i = (inner + 1) * step;
+            if (advanceOuter) {
+                outer++;
+                addWoundTriangle(side, o, 0, outer * outerStep, 0, i, step);
+            } else {
+                inner++;
+                addWoundTriangle(side, o, 0, (inner + 1) * step, step, i, step);
+            }
+        }
+    }
+
+    /**
+     * Adds a triangle of corners along a chunk side, flipping it if needed so it faces up like the rest of the terrain.
+     * Every corner is given by how far along the side it is, and how far in from the side, in tiles.
+     */
+    private void addWoundTriangle(int side, int aAlong, int aDepth, int bAlong, int bDepth, int cAlong, int cDepth) {
+        int ax = getSideX(side, aAlong, aDepth), az = getSideZ(side, aAlong, aDepth);
+        int bx = getSideX(side, bAlong, bDepth), bz = getSideZ(side, bAlong, bDepth);
+        int cx = getSideX(side, cAlong, cDepth), cz = getSideZ(side, cAlong, cDepth);
+        int cross = (bx - ax) * (cz - az) - (bz - az) * (cx - ax);
+        if (cross < 0) addTriangle(ax, az, bx, bz, cx, cz);
+        else addTriangle(ax, az, cx, cz, bx, bz);
+    }
+
+    private int getSideX(int side, int along, int depth) {
+        switch (side) {
+            case SOUTH:
+            case NORTH:
+                return along;
+            case WEST:
+                return depth;
+            default:
+                return chunkSize - depth;
+        }
+    }
+
+    private int getSideZ(int side, int along, int depth) {
+        switch (side) {
+            case SOUTH:
+                return depth;
+            case NORTH:
+                return chunkSize - depth;
+            default:
+                return along;
+        }
+    }
+
+    /**
+     * Adds a triangle by its tile corners to the sub-mesh its center is in. Sub-meshes are a multiple
+     * of the coarsest step wide, so the center of a triangle is never on the edge between two.
+     */
+    private void addTriangle(int ax, int az, int bx, int bz, int cx, int cz) {
+        int subMesh = grid.getSubMesh(scratchLayout, scratchLevel, (ax + bx + cx) / 3);
+        addTriangle(subMesh,
+            grid.getLocalVertex(scratchLayout, scratchLevel, subMesh, ax, az),
+            grid.getLocalVertex(scratchLayout, scratchLevel, subMesh, bx, bz),
+            grid.getLocalVertex(scratchLayout, scratchLevel, subMesh, cx, cz));
+    }
+
+    private void addTriangle(int subMesh, int a, int b, int c) {
+        ShortArray indices = scratch[subMesh];
+        indices.add((short) a);
+        indices.add((short) b);
+        indices.add((short) c);
+    }
+}
@@ -0,0 +1,140 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.IndexBufferObject;
+import com.badlogic.gdx.graphics.glutils.IndexData;
+import com.badlogic.gdx.graphics.glutils.VertexBufferObject;
+import com.badlogic.gdx.graphics.glutils.VertexBufferObjectWithVAO;
+import com.badlogic.gdx.graphics.glutils.VertexData;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A chunk mesh with its own vertex buffer, whose indices can point at an index buffer shared
+ * with every other chunk mesh drawn with the same indices. Every chunk at the same level of
+ * detail and stitching uses the same indices, so they are uploaded once instead of per chunk.
+ * Indices only one chunk uses, like merged tiles, are copied into a buffer of the mesh's own.
+ */
+public class ChunkMesh extends Mesh {
+    private final ChunkIndexData indexData;
+
+    /**
+     * @param maxVertices The vertices the mesh holds, it is reused for chunks with the same count.
+     * @param attributes  The vertex attributes.
+     */
+    public ChunkMesh(int maxVertices, VertexAttributes attributes) {
+        this(createVertexData(maxVertices, attributes), new ChunkIndexData());
+    }
+
+    private ChunkMesh(VertexData vertexData, ChunkIndexData indexData) {
+        super(vertexData, indexData, false);
+        this.indexData = indexData;
+    }
+
+    /**
+     * The same vertex buffer a static {@link Mesh} makes.
+     */
+    private static VertexData createVertexData(int maxVertices, VertexAttributes attributes) {
+        if (Gdx.gl30 != null) return new VertexBufferObjectWithVAO(true, maxVertices, attributes);
+        return new VertexBufferObject(true, maxVertices, attributes);
+    }
+
+    /**
+     * Draws this mesh with a shared index buffer. The buffer is not disposed with the mesh.
+     */
+    public void shareIndices(IndexBufferObject buffer) {
+        indexData.target = buffer;
+    }
+
+    /**
+     * @return The indices this mesh holds in a buffer of its own, 0 while it only shares them.
+     */
+    public int getOwnedIndexCount() {
+        return indexData.owned == null ? 0 : indexData.owned.getNumMaxIndices();
+    }
+
+    /**
+     * Points at the shared buffer in use, or at the owned buffer once indices are set on the mesh.
+     */
+    private static class ChunkIndexData implements IndexData {
+        private IndexData target;
+        private IndexBufferObject owned;
+
+        @Override
+        public int getNumIndices() {
+            return target == null ? 0 : target.getNumIndices();
+        }
+
+        @Override
+        public int getNumMaxIndices() {
+            return target == null ? 0 : target.getNumMaxIndices();
+        }
+
+        @Override
+        public void setIndices(short[] indices, int offset, int count) {
+            own(count).setIndices(indices, offset, count);
+        }
+
+        @Override
+        public void setIndices(ShortBuffer indices) {
+            own(indices.remaining()).setIndices(indices);
+        }
+
+        @Override
+        public void updateIndices(int targetOffset, short[] indices, int offset, int count) {
+            if (target != owned) throw new RuntimeException("Shared chunk indices can't be updated");
+            owned.updateIndices(targetOffset, indices, offset, count);
+        }
+
+        @Override
+        @Deprecated
+        public ShortBuffer getBuffer() {
+            return target.getBuffer(false);
+        }
+
+        /**
+         * Writing to a shared buffer changes the indices of every mesh sharing it, only set indices to change them.
+         */
+        @Override
+        public ShortBuffer getBuffer(boolean forWriting) {
+            return target.getBuffer(forWriting);
+        }
+
+        @Override
+        public void bind() {
+            if (target != null) target.bind();
+        }
+
+        @Override
+        public void unbind() {
+            if (target != null) target.unbind();
+        }
+
+        @Override
+        public void invalidate() {
+            // The desktop backend never loses its GL context, shared buffers are left to their owner
+            if (owned != null) owned.invalidate();
+        }
+
+        @Override
+        public void dispose() {
+            if (owned != null) owned.dispose();
+            owned = null;
+            target = null;
+        }
+
+        /**
+         * Points at the owned buffer, made larger first if the indices don't fit.
+         */
+        private IndexBufferObject own(int count) {
+            if (owned == null || owned.getNumMaxIndices() < count) {
+                if (owned != null) owned.dispose();
+                owned = new IndexBufferObject(true, count);
+            }
+            target = owned;
+            return owned;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package tile.land.gen;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The plain vertex and index data of a single chunk mesh. This holds no GL resources,
+ * so it can be built on any thread and then handed to the render thread for upload.
+ * The vertices of every level of detail are kept too, their indices come from {@link ChunkLod}.
+ */
+@Getter
+public class ChunkMeshData {
+    private final int chunkX, chunkZ;
+    private final float[] vertices;
+    /**
+     * The full detail indices of every sub-mesh, see {@link ChunkGrid}.
+     */
+    private final short[][] indices;
+    private final float[][] lodVertices;
+    /**
+     * The lowest and highest tile corner in the chunk.
+     */
+    private float minHeight, maxHeight;
+    /**
+     * The CPU time it took to build this data.
+     */
+    @Setter
+    private long meshNanos;
+
+    public ChunkMeshData(int chunkX, int chunkZ, float[] vertices, short[][] indices, int levelCount) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.vertices = vertices;
+        this.indices = indices;
+        this.lodVertices = new float[levelCount][];
+    }
+
+    /**
+     * Estimates the bytes uploaded for this data, the vertices of every level and the full detail indices.
+     */
+    public long estimateBytes() {
+        long bytes = 0;
+        for (short[] subMeshIndices : indices) bytes += subMeshIndices.length * 2L;
+        for (float[] levelVertices : lodVertices) {
+            if (levelVertices != null) bytes += levelVertices.length * 4L;
+        }
+        return bytes;
+    }
+
+    public void setHeightRange(float minHeight, float maxHeight) {
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+    }
+}
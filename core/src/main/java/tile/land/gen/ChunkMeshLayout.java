@@ -0,0 +1,17 @@
+package tile.land.gen;
+
+/**
+ * The ways the vertices of a chunk mesh can be laid out.
+ */
+public enum ChunkMeshLayout {
+    /**
+     * Every tile has its own 4 vertices, so a chunk has {@code 4 * chunkSize^2} vertices.
+     * Tile corners can be moved independently of their neighbours.
+     */
+    PER_TILE,
+    /**
+     * Tiles share their corner vertices through the index buffer, so a chunk has
+     * {@code (chunkSize + 1)^2} vertices. Moving a corner moves it for every tile that touches it.
+     */
+    SHARED_GRID
+}
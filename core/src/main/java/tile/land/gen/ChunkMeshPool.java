@@ -0,0 +1,119 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.glutils.IndexBufferObject;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the GPU buffers and vertex arrays of unloaded chunks to give to the next chunks that
+ * load, so streaming chunks in and out doesn't keep making and freeing buffers. It also holds
+ * the index buffers shared by every {@link ChunkMesh}, one per set of {@link ChunkLod} indices.
+ * <p>
+ * Meshes and index buffers are render thread only. Vertex arrays can be taken on any
+ * thread, so the meshing threads fill them in directly.
+ */
+public class ChunkMeshPool implements Disposable {
+    /**
+     * Free meshes by their vertex count, every level of detail has its own count.
+     */
+    private final IntMap<Array<ChunkMesh>> meshes = new IntMap<>();
+    /**
+     * Free vertex arrays by level of detail.
+     */
+    private final ConcurrentLinkedQueue<float[]>[] vertices;
+    /**
+     * The shared index buffers by {@link ChunkLod#getSubMeshKey}.
+     */
+    private final LongMap<IndexBufferObject> indexBuffers = new LongMap<>();
+
+    /**
+     * @param levelCount The levels of detail every chunk has, see {@link ChunkGrid#getLevelCount()}.
+     */
+    @SuppressWarnings("unchecked")
+    public ChunkMeshPool(int levelCount) {
+        vertices = new ConcurrentLinkedQueue[levelCount];
+        for (int level = 0; level < levelCount; level++) vertices[level] = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Gets a free mesh, or makes one.
+     *
+     * @param vertexCount The vertices the mesh must hold.
+     * @param attributes  The vertex attributes, the same for every chunk in the world.
+     */
+    public ChunkMesh obtainMesh(int vertexCount, VertexAttributes attributes) {
+        Array<ChunkMesh> free = meshes.get(vertexCount);
+        if (free != null && free.size > 0) return free.pop();
+        return new ChunkMesh(vertexCount, attributes);
+    }
+
+    /**
+     * Takes back the meshes of a model made of {@link ChunkMesh chunk meshes}. The model holds
+     * nothing else that needs disposing, so it can be dropped after.
+     */
+    public void freeMeshes(Model model) {
+        for (Mesh mesh : model.meshes) {
+            Array<ChunkMesh> free = meshes.get(mesh.getMaxVertices());
+            if (free == null) meshes.put(mesh.getMaxVertices(), free = new Array<>());
+            free.add((ChunkMesh) mesh);
+        }
+    }
+
+    /**
+     * Gets a free vertex array, or makes one. The caller must overwrite every float.
+     *
+     * @param level  The level of detail the vertices are for.
+     * @param length The floats the array holds.
+     */
+    public float[] obtainVertices(int level, int length) {
+        float[] array = vertices[level].poll();
+        return array != null && array.length == length ? array : new float[length];
+    }
+
+    public void freeVertices(int level, float[] array) {
+        vertices[level].add(array);
+    }
+
+    /**
+     * Gets the shared index buffer of a set of sub-mesh indices, uploaded the first time it is asked for.
+     *
+     * @param subMeshKey The {@link ChunkLod#getSubMeshKey} of the indices.
+     * @param indices    The indices, only read when the buffer is new.
+     */
+    public IndexBufferObject getIndexBuffer(long subMeshKey, short[] indices) {
+        IndexBufferObject buffer = indexBuffers.get(subMeshKey);
+        if (buffer == null) {
+            buffer = new IndexBufferObject(true, indices.length);
+            buffer.setIndices(indices, 0, indices.length);
+            indexBuffers.put(subMeshKey, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return The estimated bytes of the shared index buffers.
+     */
+    public long getIndexBufferBytes() {
+        long bytes = 0;
+        for (IndexBufferObject buffer : indexBuffers.values()) bytes += buffer.getNumMaxIndices() * 2L;
+        return bytes;
+    }
+
+    @Override
+    public void dispose() {
+        for (Array<ChunkMesh> free : meshes.values()) {
+            for (ChunkMesh mesh : free) mesh.dispose();
+        }
+        meshes.clear();
+        for (IndexBufferObject buffer : indexBuffers.values()) buffer.dispose();
+        indexBuffers.clear();
+        for (ConcurrentLinkedQueue<float[]> free : vertices) free.clear();
+    }
+}
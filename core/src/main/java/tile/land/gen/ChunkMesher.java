@@ -0,0 +1,222 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.LongArray;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static tile.land.gen.Constants.TILE_SIZE;
+
+/**
+ * Builds the vertex and index data of chunk meshes. This is the CPU half of chunk generation,
+ * it never touches OpenGL so it is safe to run on worker threads or without a GL context.
+ * The data it creates is uploaded to the GPU by the {@link ChunkHandler}.
+ */
+public class ChunkMesher {
+    private final HeightSource heightSource;
+    /**
+     * The type of every tile, null to give every tile the first {@link TileType}.
+     */
+    private final TileLayer tileLayer;
+    private final Color color;
+    private final ChunkMeshLayout layout;
+    private final ChunkVertexFormat format;
+    private final ChunkGrid grid;
+    private final int chunkSize;
+    /**
+     * The full detail indices of every sub-mesh are the same for every chunk, so they are built once and shared. Do not modify them.
+     */
+    private final short[][] indices;
+    /**
+     * The corner heights of the chunk being meshed, one array per meshing thread.
+     */
+    private final ThreadLocal<float[]> heights;
+    private final ThreadLocal<TileMerger> tileMergers;
+    /**
+     * Merge runs of flat tiles into larger quads, see {@link TileMerger}. Only used by {@link ChunkMeshLayout#SHARED_GRID}.
+     */
+    @Setter
+    private boolean mergeFlatTiles;
+    /**
+     * Where vertex arrays are taken from, null to make new ones.
+     */
+    @Setter
+    private ChunkMeshPool meshPool;
+
+    public ChunkMesher(HeightSource heightSource, TileLayer tileLayer, Color color, ChunkGrid grid, ChunkMeshLayout layout, ChunkVertexFormat format) {
+        this.heightSource = heightSource;
+        this.tileLayer = tileLayer;
+        this.color = color;
+        this.grid = grid;
+        this.layout = layout;
+        this.format = format;
+        this.chunkSize = grid.getChunkSize();
+        this.indices = new ChunkLod(grid).getIndices(layout, 0, new int[4]);
+        this.heights = ThreadLocal.withInitial(() -> new float[(chunkSize + 1) * (chunkSize + 1)]);
+        this.tileMergers = ThreadLocal.withInitial(() -> new TileMerger(grid));
+    }
+
+    /**
+     * Generates the mesh data for a block of chunks in parallel.
+     *
+     * @param pool         The pool that runs the meshing tasks.
+     * @param worldXLength The number of chunks to generate on the X axis.
+     * @param worldZLength The number of chunks to generate on the Z axis.
+     * @return The mesh data of every chunk, ordered by X then Z.
+     */
+    public List<ChunkMeshData> generateChunkMeshData(ForkJoinPool pool, int worldXLength, int worldZLength) {
+        LongArray chunkKeys = new LongArray(worldXLength * worldZLength);
+        for (int chunkX = 0; chunkX < worldXLength; chunkX++) {
+            for (int chunkZ = 0; chunkZ < worldZLength; chunkZ++) {
+                chunkKeys.add(Chunk.Key.pack(chunkX, chunkZ));
+            }
+        }
+        return generateChunkMeshData(pool, chunkKeys);
+    }
+
+    /**
+     * Generates the mesh data for a list of chunks in parallel.
+     *
+     * @param pool      The pool that runs the meshing tasks.
+     * @param chunkKeys The {@link Chunk.Key#pack(int, int) packed keys} of the chunks to generate.
+     * @return The mesh data of every chunk, in the same order as the keys.
+     */
+    public List<ChunkMeshData> generateChunkMeshData(ForkJoinPool pool, LongArray chunkKeys) {
+        List<ForkJoinTask<ChunkMeshData>> tasks = new ArrayList<>(chunkKeys.size);
+        for (int i = 0; i < chunkKeys.size; i++) {
+            final int x = Chunk.Key.unpackX(chunkKeys.get(i));
+            final int z = Chunk.Key.unpackZ(chunkKeys.get(i));
+            tasks.add(pool.submit(() -> generateChunkMeshData(x, z)));
+        }
+
+        List<ChunkMeshData> meshData = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<ChunkMeshData> task : tasks) meshData.add(task.join());
+        return meshData;
+    }
+
+    /**
+     * Generates the mesh data of a chunk landscape.
+     *
+     * @param chunkX The X location of this chunk.
+     * @param chunkZ The Z location of this chunk.
+     * @return The vertices and indices that represent a landscape.
+     */
+    public ChunkMeshData generateChunkMeshData(int chunkX, int chunkZ) {
+        final long start = System.nanoTime();
+
+        // Fetch the height of every tile corner in this chunk at once
+        final int corners = chunkSize + 1;
+        float[] heights = this.heights.get();
+        heightSource.getBlock(chunkX * chunkSize, chunkZ * chunkSize, corners, corners, heights);
+
+        byte[] tiles = tileLayer == null ? null : tileLayer.getChunk(chunkX, chunkZ);
+
+        ChunkMeshData meshData;
+        if (layout == ChunkMeshLayout.SHARED_GRID) meshData = generateSharedGrid(chunkX, chunkZ, heights, tiles);
+        else meshData = generatePerTile(chunkX, chunkZ, heights, tiles);
+
+        // Find the height range, used to cull the chunk when it is out of view
+        float minHeight = Float.MAX_VALUE;
+        float maxHeight = -Float.MAX_VALUE;
+        for (float height : heights) {
+            minHeight = Math.min(minHeight, height);
+            maxHeight = Math.max(maxHeight, height);
+        }
+        meshData.setHeightRange(minHeight, maxHeight);
+
+        // The coarser levels of detail are always plain grids, their indices come from ChunkLod
+        meshData.getLodVertices()[0] = meshData.getVertices();
+        for (int level = 1; level < grid.getLevelCount(); level++) {
+            meshData.getLodVertices()[level] = generateGridVertices(heights, tiles, level);
+        }
+        meshData.setMeshNanos(System.nanoTime() - start);
+        return meshData;
+    }
+
+    /**
+     * Builds a mesh where every tile has its own 4 vertices, textured with its own {@link TileAtlas} cell.
+     */
+    private ChunkMeshData generatePerTile(int chunkX, int chunkZ, float[] heights, byte[] tiles) {
+        // Init vertices array
+        final int quadVertices = 4; // A quad has 4 vertices, one at each corner
+        final int corners = chunkSize + 1;
+        float[] vertices = obtainVertices(0, format.getFloatsPerVertex() * quadVertices * chunkSize * chunkSize);
+        final float packedColor = color.toFloatBits();
+
+        // Populate the vertices array with data
+        int vertexOffset = 0;
+        for (int x = 0; x < chunkSize; x++) {
+            for (int z = 0; z < chunkSize; z++) {
+
+                int corner = z * corners + x;
+
+                float y0 = heights[corner];                // [0,0] - North West Corner
+                float y1 = heights[corner + corners];      // [0,1] - South West Corner
+                float y2 = heights[corner + 1];            // [1,0] - North East Corner
+                float y3 = heights[corner + corners + 1];  // [1,1] - South East Corner
+
+                TileType type = grid.getTileType(tiles, x, z);
+                vertexOffset = floorTile(vertices, vertexOffset, x, z, y0, y1, y2, y3, packedColor, type.getU1(), type.getV1(), type.getU2(), type.getV2());
+            }
+        }
+
+        return new ChunkMeshData(chunkX, chunkZ, vertices, indices, grid.getLevelCount());
+    }
+
+    /**
+     * Builds a mesh where tiles share their corner vertices.
+     */
+    private ChunkMeshData generateSharedGrid(int chunkX, int chunkZ, float[] heights, byte[] tiles) {
+        float[] vertices = generateGridVertices(heights, tiles, 0);
+        if (mergeFlatTiles) return new ChunkMeshData(chunkX, chunkZ, vertices, tileMergers.get().merge(vertices, format, tiles), grid.getLevelCount());
+        return new ChunkMeshData(chunkX, chunkZ, vertices, indices, grid.getLevelCount());
+    }
+
+    /**
+     * Builds one vertex for every step'th tile corner, ordered by X then Z like the tiles are.
+     * The texture coordinates count whole tiles, so the texture must be set to repeat.
+     * Tiles share these vertices, so they can't use the atlas, every vertex is tinted
+     * with the {@link TileType} of the tile it is the first corner of instead.
+     *
+     * @param heights The heights of every tile corner in the chunk.
+     * @param tiles   The tile types of the chunk, may be null.
+     * @param level   The level of detail, it decides how many tiles to skip between vertices.
+     * @return The vertices of the grid.
+     */
+    private float[] generateGridVertices(float[] heights, byte[] tiles, int level) {
+        final int corners = chunkSize + 1;
+        final int step = ChunkLod.getStep(level);
+        final int gridCorners = chunkSize / step + 1;
+        float[] vertices = obtainVertices(level, format.getFloatsPerVertex() * gridCorners * gridCorners);
+
+        int vertexOffset = 0;
+        for (int x = 0; x < corners; x += step) {
+            for (int z = 0; z < corners; z += step) {
+                float tint = grid.getTileType(tiles, x, z).getPackedTint();
+                vertexOffset = format.putVertex(vertices, vertexOffset, x * TILE_SIZE, heights[z * corners + x], z * TILE_SIZE, tint, x, chunkSize - z);
+            }
+        }
+        return vertices;
+    }
+
+    private float[] obtainVertices(int level, int length) {
+        return meshPool == null ? new float[length] : meshPool.obtainVertices(level, length);
+    }
+
+    private int floorTile(float[] vertices, int vertexOffset, float x, float z, float y0, float y1, float y2, float y3, float color, float u1, float v1, float u2, float v2) {
+        // Bottom Left [0,0]
+        vertexOffset = format.putVertex(vertices, vertexOffset, x, y0, z, color, u1, v1);
+        // Bottom Right [1,0]
+        vertexOffset = format.putVertex(vertices, vertexOffset, x + TILE_SIZE, y2, z, color, u2, v1);
+        // Top Right [1,1]
+        vertexOffset = format.putVertex(vertices, vertexOffset, x + TILE_SIZE, y3, z + TILE_SIZE, color, u2, v2);
+        // Top Left [0,1]
+        vertexOffset = format.putVertex(vertices, vertexOffset, x, y1, z + TILE_SIZE, color, u1, v2);
+
+        return vertexOffset;
+    }
+}
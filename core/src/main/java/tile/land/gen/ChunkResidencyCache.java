@@ -0,0 +1,113 @@
+package tile.land.gen;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Keeps the chunks that hold GPU resources under a budget. Resident chunks are kept in the
+ * order they were last visible, and when the budget is exceeded the least recently visible
+ * chunks are unloaded. Unloaded chunks keep their place in the world and are generated
+ * again from the heightfield the next time they come into view.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ChunkResidencyCache {
+    /**
+     * The most chunks that may be resident at once, 0 for no limit.
+     */
+    private final int maxChunks;
+    /**
+     * The most estimated bytes of mesh data that may be resident at once, 0 for no limit.
+     */
+    private final long maxBytes;
+
+    private int residentChunks;
+    private long residentBytes;
+
+    /**
+     * A visible chunk that was already resident.
+     */
+    private long hits;
+    /**
+     * A visible chunk that had to be generated.
+     */
+    private long misses;
+    /**
+     * A chunk that was unloaded to stay in budget.
+     */
+    private long evictions;
+
+    /**
+     * The most and least recently visible resident chunks.
+     */
+    @Getter(AccessLevel.NONE)
+    private Chunk head, tail;
+
+    /**
+     * Marks a resident chunk as visible.
+     *
+     * @param chunk The chunk in view.
+     * @param pass  The visibility pass the chunk was seen in.
+     */
+    public void touch(Chunk chunk, long pass) {
+        hits++;
+        chunk.lastVisiblePass = pass;
+        unlink(chunk);
+        linkHead(chunk);
+    }
+
+    /**
+     * Adds a chunk that was just loaded, then unloads the least recently visible chunks until
+     * the cache is back in budget. Chunks seen in the current pass are never unloaded.
+     *
+     * @param chunk The loaded chunk.
+     * @param pass  The current visibility pass.
+     */
+    public void add(Chunk chunk, long pass) {
+        misses++;
+        chunk.lastVisiblePass = pass;
+        chunk.residentBytes = chunk.estimateBytes();
+        linkHead(chunk);
+        residentChunks++;
+        residentBytes += chunk.residentBytes;
+
+        while (isOverBudget() && tail != null && tail.lastVisiblePass != pass) {
+            Chunk evicted = tail;
+            remove(evicted);
+            evicted.unload();
+            evictions++;
+        }
+    }
+
+    /**
+     * Stops tracking a chunk. This does not unload it.
+     *
+     * @param chunk The resident chunk.
+     */
+    public void remove(Chunk chunk) {
+        unlink(chunk);
+        residentChunks--;
+        residentBytes -= chunk.residentBytes;
+    }
+
+    private boolean isOverBudget() {
+        return (maxChunks > 0 && residentChunks > maxChunks) || (maxBytes > 0 && residentBytes > maxBytes);
+    }
+
+    private void linkHead(Chunk chunk) {
+        chunk.residentPrevious = null;
+        chunk.residentNext = head;
+        if (head != null) head.residentPrevious = chunk;
+        head = chunk;
+        if (tail == null) tail = chunk;
+    }
+
+    private void unlink(Chunk chunk) {
+        if (chunk.residentPrevious != null) chunk.residentPrevious.residentNext = chunk.residentNext;
+        else if (head == chunk) head = chunk.residentNext;
+        if (chunk.residentNext != null) chunk.residentNext.residentPrevious = chunk.residentPrevious;
+        else if (tail == chunk) tail = chunk.residentPrevious;
+        chunk.residentPrevious = chunk.residentNext = null;
+    }
+}
@@ -0,0 +1,246 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Generates chunk mesh data in the background. Chunks wait in a queue, nearest to the camera
+ * first, and only a few are meshed at once so new nearby chunks don't wait behind far ones.
+ * Chunks that leave the view radius before they are meshed are dropped.
+ * <p>
+ * Finished data is picked up by the render thread with {@link #peek()} and {@link #remove()},
+ * so it decides how much to upload per frame. Every method must be called from the render thread.
+ */
+public class ChunkScheduler {
+    private final ChunkMesher chunkMesher;
+    private final RegionStorage regionStorage;
+    private final ForkJoinPool pool;
+    /**
+     * The most chunks meshed at once.
+     */
+    private final int maxJobs;
+    /**
+     * Chunks further than this from the camera chunk, along either axis, are dropped.
+     */
+    private final int viewRadius;
+    /**
+     * The length and width of a chunk in tiles.
+     */
+    private final int chunkSize;
+
+    /**
+     * Chunks waiting for a job, the nearest chunk last.
+     */
+    private final LongArray queued = new LongArray();
+    /**
+     * The jobs that haven't been picked up, by packed chunk key.
+     */
+    private final LongMap<Job> running = new LongMap<>();
+    /**
+     * Jobs done meshing, in the order they finished.
+     */
+    private final ConcurrentLinkedQueue<Job> finished = new ConcurrentLinkedQueue<>();
+
+    public ChunkScheduler(ChunkMesher chunkMesher, RegionStorage regionStorage, ForkJoinPool pool, int maxJobs, int viewRadius, int chunkSize) {
+        this.chunkMesher = chunkMesher;
+        this.regionStorage = regionStorage;
+        this.pool = pool;
+        this.maxJobs = maxJobs;
+        this.viewRadius = viewRadius;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Queues a chunk to be meshed, if it isn't queued or being meshed already.
+     *
+     * @param chunkKey The {@link Chunk.Key#pack(int, int) packed key} of the chunk.
+     */
+    public void schedule(long chunkKey) {
+        Job job = running.get(chunkKey);
+        if (job != null) {
+            // Back in view before it was picked up, a job that skipped the meshing is queued again once it finishes
+            job.cancelled = false;
+            return;
+        }
+        if (!queued.contains(chunkKey)) queued.add(chunkKey);
+    }
+
+    /**
+     * Drops the chunks outside the view radius of the camera, orders the queue by the distance
+     * to the camera and starts as many jobs as are allowed.
+     *
+     * @param camX The camera X position.
+     * @param camZ The camera Z position.
+     */
+    public void update(float camX, float camZ) {
+        int camChunkX = Math.floorDiv(MathUtils.floor(camX), chunkSize);
+        int camChunkZ = Math.floorDiv(MathUtils.floor(camZ), chunkSize);
+        for (int i = queued.size - 1; i >= 0; i--) {
+            if (isOutside(queued.get(i), camChunkX, camChunkZ)) queued.removeIndex(i);
+        }
+        for (Job job : running.values()) {
+            if (isOutside(job.chunkKey, camChunkX, camChunkZ)) job.cancelled = true;
+        }
+
+        // Insertion sort, the farthest first. The queue is short and mostly in order already.
+        long[] keys = queued.items;
+        for (int i = 1; i < queued.size; i++) {
+            long key = keys[i];
+            float distance = getDistance2(key, camX, camZ);
+            int j = i - 1;
+            while (j >= 0 && getDistance2(keys[j], camX, camZ) < distance) {
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            keys[j + 1] = key;
+        }
+        startJobs();
+    }
+
+    /**
+     * Gets the next finished chunk without taking it. Data that was dropped or meshed before an
+     * edit is thrown away here, and the edited chunks are queued again. A chunk that failed to
+     * mesh is never queued again, its error is thrown here instead.
+     *
+     * @return The mesh data, or null if no chunk is finished.
+     */
+    public ChunkMeshData peek() {
+        Job job;
+        while ((job = finished.peek()) != null) {
+            if (!job.cancelled && job.result != null && !job.stale) return job.result;
+            finished.poll();
+            running.remove(job.chunkKey);
+            if (job.failure != null) {
+                throw new RuntimeException("Could not mesh chunk " + Chunk.Key.unpackX(job.chunkKey) + Constants.SLASH + Chunk.Key.unpackZ(job.chunkKey), job.failure);
+            }
+            if (!job.cancelled) queued.add(job.chunkKey);
+        }
+        startJobs();
+        return null;
+    }
+
+    /**
+     * Takes the chunk returned by the last {@link #peek()}, and starts the next job.
+     */
+    public void remove() {
+        Job job = finished.poll();
+        if (job == null) return;
+        running.remove(job.chunkKey);
+        startJobs();
+    }
+
+    /**
+     * Makes the chunks being meshed now that have an edited corner be meshed again, call it when heights or tiles change.
+     *
+     * @param worldX The world X location of the edited corner, or the tile starting at it.
+     * @param worldZ The world Z location of the edited corner, or the tile starting at it.
+     */
+    public void markEdited(int worldX, int worldZ) {
+        markEdited(worldX, worldZ, worldX, worldZ);
+    }
+
+    /**
+     * Makes the chunks being meshed now that have a corner in the edited area be meshed again.
+     * A chunk mesh reads the corners from its own first corner up to the first corner of the chunks
+     * after it, so an edit on a chunk border makes every chunk sharing that border be meshed again.
+     *
+     * @param minX The lowest edited world X corner.
+     * @param minZ The lowest edited world Z corner.
+     * @param maxX The highest edited world X corner, inclusive.
+     * @param maxZ The highest edited world Z corner, inclusive.
+     */
+    public void markEdited(int minX, int minZ, int maxX, int maxZ) {
+        for (Job job : running.values()) {
+            int chunkX = Chunk.Key.unpackX(job.chunkKey) * chunkSize;
+            int chunkZ = Chunk.Key.unpackZ(job.chunkKey) * chunkSize;
+            if (maxX >= chunkX && minX <= chunkX + chunkSize && maxZ >= chunkZ && minZ <= chunkZ + chunkSize) job.stale = true;
+        }
+    }
+
+    /**
+     * Drops every queued chunk and waits for the running jobs, so nothing reads the world after it is disposed.
+     */
+    public void cancelAll() {
+        queued.clear();
+        for (Job job : running.values()) job.cancelled = true;
+        for (Job job : running.values()) job.task.quietlyJoin();
+        running.clear();
+        finished.clear();
+    }
+
+    /**
+     * @return The chunks waiting for a job.
+     */
+    public int getQueuedChunks() {
+        return queued.size;
+    }
+
+    /**
+     * @return The jobs that are meshing, or are done and wait to be uploaded.
+     */
+    public int getRunningJobs() {
+        return running.size;
+    }
+
+    private void startJobs() {
+        while (running.size < maxJobs && queued.size > 0) {
+            long chunkKey = queued.pop();
+            // Saved heights are read here, the jobs only read the heightfield
+            regionStorage.loadChunkCorners(Chunk.Key.unpackX(chunkKey), Chunk.Key.unpackZ(chunkKey));
+
+            Job job = new Job(chunkKey);
+            running.put(chunkKey, job);
+            job.task = pool.submit(job);
+        }
+    }
+
+    private boolean isOutside(long chunkKey, int camChunkX, int camChunkZ) {
+        return Math.abs(Chunk.Key.unpackX(chunkKey) - camChunkX) > viewRadius
+            || Math.abs(Chunk.Key.unpackZ(chunkKey) - camChunkZ) > viewRadius;
+    }
+
+    private float getDistance2(long chunkKey, float camX, float camZ) {
+        float x = (Chunk.Key.unpackX(chunkKey) + 0.5f) * chunkSize - camX;
+        float z = (Chunk.Key.unpackZ(chunkKey) + 0.5f) * chunkSize - camZ;
+        return x * x + z * z;
+    }
+
+    /**
+     * Meshes one chunk on the pool.
+     */
+    private class Job implements Runnable {
+        private final long chunkKey;
+        private volatile boolean cancelled;
+        /**
+         * True if the chunk was edited after the job started, the data may hold the old heights then.
+         */
+        private boolean stale;
+        private ChunkMeshData result;
+        /**
+         * What the meshing threw, null if it didn't.
+         */
+        private Throwable failure;
+        private ForkJoinTask<?> task;
+
+        private Job(long chunkKey) {
+            this.chunkKey = chunkKey;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) result = chunkMesher.generateChunkMeshData(Chunk.Key.unpackX(chunkKey), Chunk.Key.unpackZ(chunkKey));
+            } catch (Throwable e) {
+                // Kept for the render thread, the task would hide it
+                failure = e;
+            } finally {
+                finished.add(this);
+            }
+        }
+    }
+}
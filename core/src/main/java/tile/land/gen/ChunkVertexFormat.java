@@ -0,0 +1,249 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import lombok.Getter;
+
+import static tile.land.gen.Constants.*;
+
+/**
+ * How the vertices of a chunk mesh are stored. The vertex data is always kept in a float array,
+ * the compact format packs its smaller components into the bits of those floats.
+ */
+@Getter
+public enum ChunkVertexFormat {
+    /**
+     * 24 bytes a vertex: float position, packed color and float texture coordinates.
+     * The chunk transform only holds the world offset of the chunk.
+     */
+    FLOAT(new VertexAttributes(
+        new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+        new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE),
+        new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0")), true) {
+        @Override
+        public int putVertex(float[] vertices, int offset, float x, float y, float z, float color, float u, float v) {
+            vertices[offset++] = x;
+            vertices[offset++] = y;
+            vertices[offset++] = z;
+            vertices[offset++] = color;
+            vertices[offset++] = u;
+            vertices[offset++] = v;
+            return offset;
+        }
+
+        @Override
+        public Vector3 getPosition(float[] vertices, int vertex, Vector3 out) {
+            int index = vertex * 6;
+            return out.set(vertices[index], vertices[index + 1], vertices[index + 2]);
+        }
+
+        @Override
+        public void setPosition(float[] vertices, int vertex, float x, float y, float z) {
+            int index = vertex * 6;
+            vertices[index] = x;
+            vertices[index + 1] = y;
+            vertices[index + 2] = z;
+        }
+
+        @Override
+        public void setHeight(float[] vertices, int vertex, float height) {
+            vertices[vertex * 6 + 1] = height;
+        }
+
+        @Override
+        public void setColor(float[] vertices, int vertex, float color) {
+            vertices[vertex * 6 + 3] = color;
+        }
+
+        @Override
+        public void setTexCoords(float[] vertices, int vertex, float u, float v) {
+            vertices[vertex * 6 + 4] = u;
+            vertices[vertex * 6 + 5] = v;
+        }
+
+        @Override
+        public Matrix4 setTransform(Matrix4 transform, int chunkX, int chunkZ, int chunkSize) {
+            return transform.idt().setTranslation(chunkX * chunkSize, 0, chunkZ * chunkSize);
+        }
+    },
+    /**
+     * 12 bytes a vertex: the position as 3 unsigned shorts in tiles and height steps above {@link #COMPACT_MIN_HEIGHT}, the
+     * texture coordinates as 2 unsigned bytes in whole tiles or atlas cells, and the packed color.
+     * <p>
+     * The position is stored as (Z, X, height), so the X tile lands in the high half of the
+     * first float and the texture coordinates in the high half of the second. Keeping those
+     * below 128 means no packed float is ever a NaN, which the JVM may not copy bit for bit.
+     * Grid texture coordinates count the tiles of a chunk, so chunks over {@link #COMPACT_MAX_TEX_COORD} tiles don't fit.
+     * The chunk transform maps the components back to world X, Y and Z and scales them.
+     * These meshes are not float data, so they can't be merged by a {@link com.badlogic.gdx.graphics.g3d.ModelCache}.
+     */
+    COMPACT(new VertexAttributes(
+        new VertexAttribute(VertexAttributes.Usage.Position, 3, GL20.GL_UNSIGNED_SHORT, false, ShaderProgram.POSITION_ATTRIBUTE),
+        new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, GL20.GL_UNSIGNED_BYTE, false, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"),
+        new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, ShaderProgram.COLOR_ATTRIBUTE)), false) {
+        @Override
+        public int putVertex(float[] vertices, int offset, float x, float y, float z, float color, float u, float v) {
+            vertices[offset++] = pack(quantizeTile(z), quantizeTile(x));
+            vertices[offset++] = pack(quantizeHeight(y), packTexCoords(u, v));
+            vertices[offset++] = color;
+            return offset;
+        }
+
+        @Override
+        public Vector3 getPosition(float[] vertices, int vertex, Vector3 out) {
+            int index = vertex * 3;
+            int zx = Float.floatToRawIntBits(vertices[index]);
+            int height = Float.floatToRawIntBits(vertices[index + 1]) & 0xFFFF;
+            return out.set((zx >>> 16) * TILE_SIZE, height * COMPACT_HEIGHT_STEP + COMPACT_MIN_HEIGHT, (zx & 0xFFFF) * TILE_SIZE);
+        }
+
+        @Override
+        public void setPosition(float[] vertices, int vertex, float x, float y, float z) {
+            int index = vertex * 3;
+            vertices[index] = pack(quantizeTile(z), quantizeTile(x));
+            setHeight(vertices, vertex, y);
+        }
+
+        @Override
+        public void setHeight(float[] vertices, int vertex, float height) {
+            // Keep the texture coordinates in the high half
+            int index = vertex * 3 + 1;
+            vertices[index] = pack(quantizeHeight(height), Float.floatToRawIntBits(vertices[index]) >>> 16);
+        }
+
+        @Override
+        public void setColor(float[] vertices, int vertex, float color) {
+            vertices[vertex * 3 + 2] = color;
+        }
+
+        @Override
+        public void setTexCoords(float[] vertices, int vertex, float u, float v) {
+            // Keep the height in the low half
+            int index = vertex * 3 + 1;
+            vertices[index] = pack(Float.floatToRawIntBits(vertices[index]), packTexCoords(u, v));
+        }
+
+        @Override
+        public Matrix4 setTransform(Matrix4 transform, int chunkX, int chunkZ, int chunkSize) {
+            // Position (Z, X, height) -> world (X, Y, Z), a rotation of the axes so triangles keep their winding
+            float[] val = transform.idt().val;
+            val[Matrix4.M00] = 0f;
+            val[Matrix4.M01] = TILE_SIZE;
+            val[Matrix4.M03] = chunkX * chunkSize;
+            val[Matrix4.M11] = 0f;
+            val[Matrix4.M12] = COMPACT_HEIGHT_STEP;
+            val[Matrix4.M13] = COMPACT_MIN_HEIGHT;
+            val[Matrix4.M20] = TILE_SIZE;
+            val[Matrix4.M22] = 0f;
+            val[Matrix4.M23] = chunkZ * chunkSize;
+            return transform;
+        }
+    };
+
+    /**
+     * The lowest height the compact format can hold. Heights are stored as steps up from here,
+     * so edits can dig below 0 as far as {@link Constants#MAX_HEIGHT}.
+     */
+    public static final float COMPACT_MIN_HEIGHT = -MAX_HEIGHT;
+    /**
+     * The heights the compact format can hold, from {@link #COMPACT_MIN_HEIGHT} up. Leaves room for edits above {@link Constants#MAX_HEIGHT}.
+     */
+    public static final float COMPACT_HEIGHT_RANGE = 4f * MAX_HEIGHT;
+    /**
+     * The smallest height change the compact format can hold.
+     */
+    public static final float COMPACT_HEIGHT_STEP = COMPACT_HEIGHT_RANGE / 0xFFFF;
+    /**
+     * The highest texture coordinate the compact format can hold.
+     */
+    public static final int COMPACT_MAX_TEX_COORD = 127;
+
+    private final VertexAttributes attributes;
+    /**
+     * The number of floats one vertex takes up in a vertex array.
+     */
+    private final int floatsPerVertex;
+    /**
+     * True if the meshes can be merged by a {@link com.badlogic.gdx.graphics.g3d.ModelCache}, which only handles float data.
+     */
+    private final boolean cacheable;
+
+    ChunkVertexFormat(VertexAttributes attributes, boolean cacheable) {
+        this.attributes = attributes;
+        this.floatsPerVertex = attributes.vertexSize / 4;
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Writes one vertex into a vertex array.
+     *
+     * @param vertices The vertex array.
+     * @param offset   The first float of the vertex.
+     * @param x        The local X position.
+     * @param y        The height.
+     * @param z        The local Z position.
+     * @param color    The packed color.
+     * @param u        The U texture coordinate.
+     * @param v        The V texture coordinate.
+     * @return The offset of the next vertex.
+     */
+    public abstract int putVertex(float[] vertices, int offset, float x, float y, float z, float color, float u, float v);
+
+    /**
+     * Reads the local position of a vertex, the same for every format.
+     *
+     * @param vertices The vertex array.
+     * @param vertex   The index of the vertex, counted in vertices.
+     * @param out      The vector to store the position in.
+     * @return The out vector.
+     */
+    public abstract Vector3 getPosition(float[] vertices, int vertex, Vector3 out);
+
+    public abstract void setPosition(float[] vertices, int vertex, float x, float y, float z);
+
+    public abstract void setHeight(float[] vertices, int vertex, float height);
+
+    public abstract void setColor(float[] vertices, int vertex, float color);
+
+    public abstract void setTexCoords(float[] vertices, int vertex, float u, float v);
+
+    /**
+     * Sets the transform that places a chunk mesh of this format in the world.
+     *
+     * @param chunkSize The length and width of a chunk in tiles.
+     * @return The transform.
+     */
+    public abstract Matrix4 setTransform(Matrix4 transform, int chunkX, int chunkZ, int chunkSize);
+
+    /**
+     * @param chunkSize The length and width of a chunk in tiles.
+     * @return True if every texture coordinate of a chunk this size fits the format.
+     */
+    public boolean fitsChunkSize(int chunkSize) {
+        return this != COMPACT || chunkSize <= COMPACT_MAX_TEX_COORD;
+    }
+
+    /**
+     * Packs two unsigned shorts into the bits of one float, low first in memory.
+     */
+    private static float pack(int low, int high) {
+        return Float.intBitsToFloat(low & 0xFFFF | high << 16);
+    }
+
+    private static int packTexCoords(float u, float v) {
+        return MathUtils.clamp(Math.round(u), 0, COMPACT_MAX_TEX_COORD) | MathUtils.clamp(Math.round(v), 0, COMPACT_MAX_TEX_COORD) << 8;
+    }
+
+    private static int quantizeTile(float position) {
+        return MathUtils.clamp(Math.round(position / TILE_SIZE), 0, 0x7FFF);
+    }
+
+    private static int quantizeHeight(float height) {
+        return MathUtils.clamp(Math.round((height - COMPACT_MIN_HEIGHT) / COMPACT_HEIGHT_STEP), 0, 0xFFFF);
+    }
+}
@@ -5,19 +5,20 @@ package tile.land.gen;
  */
 public class Constants {
     /**
-     * The maximum number of chunks the camera can see at once.
+     * The maximum number of chunks the camera can see at once, by default. See {@link WorldConfig}.
      */
     public static final int CHUNK_VIEW_RADIUS = 2;
     /**
-     * The X length of the world in chunks.
+     * The X length of the world in chunks, by default. See {@link WorldConfig}.
      */
     public static final int WORLD_X_LENGTH = 29;
     /**
-     * The Z length of the world in chunks.
+     * The Z length of the world in chunks, by default. See {@link WorldConfig}.
      */
     public static final int WORLD_Z_LENGTH = WORLD_X_LENGTH;
     /**
-     * The length and width of a chunk. Min value 10.
+     * The length and width of a chunk, by default. See {@link WorldConfig}. Chunks with more vertices
+     * than 16 bit indices reach are drawn as several meshes, see {@link ChunkGrid}.
      */
     public static final int CHUNK_SIZE = 16;
     /**
@@ -25,9 +26,73 @@ public class Constants {
      */
     public static final float TILE_SIZE = 1f;
     /**
-     * The maximum height of the land generated by the {@link HeightmapProcessor}
+     * The most chunks that keep their models loaded at once, 0 for no limit.
+     * The least recently visible chunks are unloaded first.
+     */
+    public static final int CHUNK_RESIDENCY_BUDGET = 1024;
+    /**
+     * The most estimated bytes of chunk mesh data kept loaded at once, 0 for no limit.
+     */
+    public static final long CHUNK_RESIDENCY_BYTES = 0;
+    /**
+     * The most chunks uploaded to the GPU per frame, the rest wait for the next frames.
+     */
+    public static final int UPLOAD_CHUNKS_PER_FRAME = 4;
+    /**
+     * The most estimated bytes of chunk mesh data uploaded per frame. A chunk larger than this is still uploaded on its own.
+     */
+    public static final long UPLOAD_BYTES_PER_FRAME = 512 * 1024;
+    /**
+     * The most chunks meshed in the background at once. Keeping it low lets new nearby chunks skip ahead of far ones.
+     */
+    public static final int CHUNK_JOBS = Runtime.getRuntime().availableProcessors();
+    /**
+     * The most bytes the undo and redo history of height edits may take, 0 for no limit. The oldest strokes are dropped first.
+     */
+    public static final long EDIT_JOURNAL_BYTES = 4 * 1024 * 1024;
+    /**
+     * How many degrees the camera may turn before the chunks in view are culled again.
+     */
+    public static final float CULL_REBUILD_ANGLE = 1f;
+    /**
+     * The most level of detail meshes a chunk can have. Level n skips 2^n tiles per vertex.
+     */
+    public static final int LOD_LEVELS = 4;
+    /**
+     * How far from the camera, in chunk lengths, every level of detail reaches.
+     */
+    public static final float LOD_DISTANCE = 1.5f;
+    /**
+     * The maximum height of the land generated by the {@link HeightmapProcessor}, by default. See {@link WorldConfig}.
      */
     public static final float MAX_HEIGHT = 25.0f;
+    /**
+     * How chunk mesh vertices are laid out. {@link ChunkMeshLayout#SHARED_GRID} uses about 3.5x fewer
+     * vertices, {@link ChunkMeshLayout#PER_TILE} lets every tile corner be resized on its own.
+     */
+    public static final ChunkMeshLayout CHUNK_MESH_LAYOUT = ChunkMeshLayout.PER_TILE;
+    /**
+     * Merge runs of flat tiles with the same type into larger quads, so plains draw far fewer triangles.
+     * Only works with {@link ChunkMeshLayout#SHARED_GRID}, per tile meshes are never merged.
+     */
+    public static final boolean MERGE_FLAT_TILES = false;
+    /**
+     * How chunk mesh vertices are stored. {@link ChunkVertexFormat#COMPACT} halves the vertex memory,
+     * but its chunks are drawn one by one instead of through a model cache.
+     */
+    public static final ChunkVertexFormat CHUNK_VERTEX_FORMAT = ChunkVertexFormat.FLOAT;
+    /**
+     * The length and width, in chunks, of the regions whose chunks are merged into one draw batch.
+     */
+    public static final int BATCH_REGION_SIZE = 4;
+    /**
+     * The length and width of a region file in chunks.
+     */
+    public static final int REGION_SIZE = 32;
+    /**
+     * The local directory the world is saved to. Delete it to bake the heightmap image again.
+     */
+    public static final String WORLD_SAVE_DIRECTORY = "world";
     /**
      * A string used by the node system for naming nodes.
      */
@@ -0,0 +1,206 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.StringBuilder;
+
+import static tile.land.gen.Constants.SLASH;
+
+/**
+ * Formats the lines of the debug overlay without allocating. Every line is kept in its own
+ * reusable buffer, and is only marked changed when its text differs from the last update,
+ * so the labels showing them are only laid out again when they have to be.
+ */
+public class DebugText {
+    public static final int FPS = 0;
+    public static final int CAM_TILE = 1;
+    public static final int CHUNK_LOC = 2;
+    public static final int CHUNK_TILE = 3;
+    public static final int RESIDENCY = 4;
+    public static final int FRAME_TIMES = 5;
+    public static final int DRAW_CALLS = 6;
+    public static final int CHUNK_TIMES = 7;
+    public static final int CACHE_REBUILD = 8;
+    public static final int MEMORY = 9;
+    public static final int ALLOCATION = 10;
+    public static final int CHUNK_TRIANGLES = 11;
+    public static final int SCHEDULER = 12;
+
+    private static final String[] TITLES = {
+        "FPS: ",
+        "CAM TILE XYZ: ",
+        "CHUNK XZ: ",
+        "CHUNK TILE XZ: ",
+        "RESIDENT/HIT/MISS/EVICT: ",
+        "FRAME MS P50/P95/P99: ",
+        "DRAWS/VERTS: ",
+        "CHUNK MESH/UPLOAD MS: ",
+        "CACHE REBUILD MS: ",
+        "VRAM EST MB: ",
+        "ALLOC BYTES FRAME/MAX: ",
+        "CHUNK TRIS/UNMERGED: ",
+        "CHUNK JOBS QUEUED/RUNNING: "
+    };
+    public static final int LINE_COUNT = TITLES.length;
+
+    private final StringBuilder[] lines = new StringBuilder[LINE_COUNT];
+    private final boolean[] changed = new boolean[LINE_COUNT];
+    /**
+     * Every line is built in here first, then compared to the line it replaces.
+     */
+    private final StringBuilder scratch;
+
+    public DebugText(StringBuilder scratch) {
+        this.scratch = scratch;
+        for (int i = 0; i < LINE_COUNT; i++) lines[i] = new StringBuilder(64);
+    }
+
+    /**
+     * Formats every line again.
+     *
+     * @param fps            The frames per second.
+     * @param cameraPosition The position of the camera.
+     */
+    public void update(int fps, Vector3 cameraPosition, ChunkHandler chunkHandler, PerformanceMetrics metrics) {
+        // FPS
+        begin(FPS);
+        scratch.append(fps);
+        end(FPS);
+
+        // Camera tile location
+        begin(CAM_TILE);
+        scratch.append((int) cameraPosition.x);
+        scratch.append(SLASH);
+        scratch.append((int) cameraPosition.y);
+        scratch.append(SLASH);
+        scratch.append((int) cameraPosition.z);
+        end(CAM_TILE);
+
+        // Current camera chunk
+        begin(CHUNK_LOC);
+        scratch.append(chunkHandler.getCurrentChunkX());
+        scratch.append(SLASH);
+        scratch.append(chunkHandler.getCurrentChunkZ());
+        end(CHUNK_LOC);
+
+        // Current local chunk tile (0 - chunk size)
+        begin(CHUNK_TILE);
+        scratch.append(chunkHandler.getChunkTileX());
+        scratch.append(SLASH);
+        scratch.append(chunkHandler.getChunkTileZ());
+        end(CHUNK_TILE);
+
+        // Chunk residency counters
+        ChunkResidencyCache residencyCache = chunkHandler.getResidencyCache();
+        begin(RESIDENCY);
+        scratch.append(residencyCache.getResidentChunks());
+        scratch.append(SLASH);
+        scratch.append(residencyCache.getHits());
+        scratch.append(SLASH);
+        scratch.append(residencyCache.getMisses());
+        scratch.append(SLASH);
+        scratch.append(residencyCache.getEvictions());
+        end(RESIDENCY);
+
+        // Frame time percentiles
+        metrics.sortFrameTimes();
+        begin(FRAME_TIMES);
+        appendDecimal(metrics.getFrameTimePercentile(0.5f));
+        scratch.append(SLASH);
+        appendDecimal(metrics.getFrameTimePercentile(0.95f));
+        scratch.append(SLASH);
+        appendDecimal(metrics.getFrameTimePercentile(0.99f));
+        end(FRAME_TIMES);
+
+        // GL counters of the last frame
+        begin(DRAW_CALLS);
+        scratch.append(metrics.getDrawCalls());
+        scratch.append(SLASH);
+        scratch.append(metrics.getVertexCount());
+        end(DRAW_CALLS);
+
+        // Average time to generate a chunk
+        begin(CHUNK_TIMES);
+        appendDecimal(metrics.getAverageMeshMillis());
+        scratch.append(SLASH);
+        appendDecimal(metrics.getAverageUploadMillis());
+        end(CHUNK_TIMES);
+
+        // Last and average model cache rebuild
+        begin(CACHE_REBUILD);
+        appendDecimal(metrics.getLastCacheRebuildMillis());
+        scratch.append(SLASH);
+        appendDecimal(metrics.getAverageCacheRebuildMillis());
+        end(CACHE_REBUILD);
+
+        // Estimated memory of the resident chunk meshes
+        begin(MEMORY);
+        appendDecimal(metrics.getResidentBytes() / (1024f * 1024f));
+        end(MEMORY);
+
+        // Garbage made by the render thread
+        begin(ALLOCATION);
+        scratch.append(metrics.getFrameAllocatedBytes());
+        scratch.append(SLASH);
+        scratch.append(metrics.getMaxFrameAllocatedBytes());
+        end(ALLOCATION);
+
+        // Triangles of the current chunk, fewer than every tile's two when flat tiles are merged
+        begin(CHUNK_TRIANGLES);
+        scratch.append(chunkHandler.getCurrentChunkTriangles());
+        scratch.append(SLASH);
+        int chunkSize = chunkHandler.getChunkGrid().getChunkSize();
+        scratch.append(2 * chunkSize * chunkSize);
+        end(CHUNK_TRIANGLES);
+
+        // Chunks waiting to be generated in the background
+        ChunkScheduler chunkScheduler = chunkHandler.getChunkScheduler();
+        begin(SCHEDULER);
+        scratch.append(chunkScheduler == null ? 0 : chunkScheduler.getQueuedChunks());
+        scratch.append(SLASH);
+        scratch.append(chunkScheduler == null ? 0 : chunkScheduler.getRunningJobs());
+        end(SCHEDULER);
+    }
+
+    /**
+     * @return The text of a line. Reused, copy it to keep it.
+     */
+    public CharSequence getLine(int line) {
+        return lines[line];
+    }
+
+    /**
+     * @return True if the line changed in the last {@link #update}.
+     */
+    public boolean isChanged(int line) {
+        return changed[line];
+    }
+
+    public static String getTitle(int line) {
+        return TITLES[line];
+    }
+
+    private void begin(int line) {
+        scratch.setLength(0);
+        scratch.append(TITLES[line]);
+    }
+
+    private void end(int line) {
+        StringBuilder text = lines[line];
+        changed[line] = !text.equals(scratch);
+        if (changed[line]) {
+            text.setLength(0);
+            text.append(scratch);
+        }
+        scratch.setLength(0);
+    }
+
+    /**
+     * Appends a number with two decimals, without allocating.
+     */
+    private void appendDecimal(float value) {
+        int hundredths = Math.round(value * 100f);
+        scratch.append(hundredths / 100);
+        scratch.append('.');
+        scratch.append(hundredths % 100, 2, '0');
+    }
+}
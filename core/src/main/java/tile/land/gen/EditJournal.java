@@ -0,0 +1,203 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ByteArray;
+
+/**
+ * The undo and redo history of corner height edits, grouped into strokes. A stroke is every
+ * edit made between {@link #beginStroke()} and {@link #endStroke()}, and is undone at once.
+ * <p>
+ * Every change is stored as varints: the chunk, as a step from the chunk of the change before
+ * it, the corner index in that chunk, as a step from the corner before it, and the height
+ * change as the XOR of the old and new float bits. XOR undoes itself exactly and in any order,
+ * so the same data both undoes and redoes a stroke, with no rounding drift. A change is
+ * usually 4 to 7 bytes.
+ * <p>
+ * The history is kept under a byte budget, the oldest strokes are dropped first.
+ */
+public class EditJournal {
+    /**
+     * The most bytes the strokes may take, 0 for no limit.
+     */
+    private final long maxBytes;
+    /**
+     * The length and width of a chunk, corners are stored per chunk.
+     */
+    private final int chunkSize;
+    private final Array<byte[]> undoStrokes = new Array<>();
+    private final Array<byte[]> redoStrokes = new Array<>();
+    /**
+     * The stroke being recorded.
+     */
+    private final ByteArray stroke = new ByteArray();
+    private boolean recording;
+    private long bytes;
+
+    // The last change written to the stroke, or read from it
+    private int lastChunkX, lastChunkZ, lastCorner;
+    private int readOffset;
+
+    public EditJournal(long maxBytes, int chunkSize) {
+        this.maxBytes = maxBytes;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the height of a world tile corner, used when a stroke is undone or redone.
+     */
+    public interface CornerSetter {
+        void setCornerHeight(int worldX, int worldZ, float height);
+    }
+
+    /**
+     * Starts a stroke, every change recorded until {@link #endStroke()} is undone together.
+     */
+    public void beginStroke() {
+        if (recording) endStroke();
+        recording = true;
+        stroke.clear();
+        lastChunkX = lastChunkZ = lastCorner = 0;
+    }
+
+    /**
+     * Ends the stroke and keeps it, if anything changed. Older strokes are dropped to stay in budget.
+     */
+    public void endStroke() {
+        if (!recording) return;
+        recording = false;
+        if (stroke.size == 0) return;
+
+        undoStrokes.add(stroke.toArray());
+        bytes += stroke.size;
+        stroke.clear();
+        // A new change ends the old future
+        for (byte[] redo : redoStrokes) bytes -= redo.length;
+        redoStrokes.clear();
+
+        while (maxBytes > 0 && bytes > maxBytes && undoStrokes.size > 0) {
+            bytes -= undoStrokes.removeIndex(0).length;
+        }
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Records a change to a corner height. Must be called while a stroke is recorded.
+     *
+     * @param worldX    The world X location of the corner.
+     * @param worldZ    The world Z location of the corner.
+     * @param oldHeight The height before the change.
+     * @param newHeight The height after the change.
+     */
+    public void record(int worldX, int worldZ, float oldHeight, float newHeight) {
+        if (!recording) throw new RuntimeException("Edits can only be recorded inside a stroke");
+        int change = Float.floatToRawIntBits(oldHeight) ^ Float.floatToRawIntBits(newHeight);
+        if (change == 0) return;
+
+        // Corners on a chunk border are stored in the chunk they are the first corner of
+        int chunkX = Math.floorDiv(worldX, chunkSize);
+        int chunkZ = Math.floorDiv(worldZ, chunkSize);
+        int corner = (worldZ - chunkZ * chunkSize) * chunkSize + worldX - chunkX * chunkSize;
+
+        writeVarint(zigZag(chunkX - lastChunkX));
+        writeVarint(zigZag(chunkZ - lastChunkZ));
+        writeVarint(zigZag(corner - lastCorner));
+        writeVarint(change);
+        lastChunkX = chunkX;
+        lastChunkZ = chunkZ;
+        lastCorner = corner;
+    }
+
+    /**
+     * Undoes the newest stroke.
+     *
+     * @param heightSource The current heights.
+     * @param setter       Sets every changed corner back.
+     * @return False if there is nothing to undo.
+     */
+    public boolean undo(HeightSource heightSource, CornerSetter setter) {
+        endStroke();
+        if (undoStrokes.size == 0) return false;
+        byte[] data = undoStrokes.pop();
+        replay(data, heightSource, setter);
+        redoStrokes.add(data);
+        return true;
+    }
+
+    /**
+     * Redoes the newest undone stroke.
+     *
+     * @param heightSource The current heights.
+     * @param setter       Sets every changed corner again.
+     * @return False if there is nothing to redo.
+     */
+    public boolean redo(HeightSource heightSource, CornerSetter setter) {
+        endStroke();
+        if (redoStrokes.size == 0) return false;
+        byte[] data = redoStrokes.pop();
+        replay(data, heightSource, setter);
+        undoStrokes.add(data);
+        return true;
+    }
+
+    public int getUndoCount() {
+        return undoStrokes.size;
+    }
+
+    public int getRedoCount() {
+        return redoStrokes.size;
+    }
+
+    /**
+     * @return The bytes taken by the kept strokes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private void replay(byte[] data, HeightSource heightSource, CornerSetter setter) {
+        readOffset = 0;
+        int chunkX = 0, chunkZ = 0, corner = 0;
+        while (readOffset < data.length) {
+            chunkX += unZigZag(readVarint(data));
+            chunkZ += unZigZag(readVarint(data));
+            corner += unZigZag(readVarint(data));
+            int change = readVarint(data);
+
+            int worldX = chunkX * chunkSize + corner % chunkSize;
+            int worldZ = chunkZ * chunkSize + corner / chunkSize;
+            float height = Float.intBitsToFloat(Float.floatToRawIntBits(heightSource.getHeight(worldX, worldZ)) ^ change);
+            setter.setCornerHeight(worldX, worldZ, height);
+        }
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            stroke.add((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        stroke.add((byte) value);
+    }
+
+    private int readVarint(byte[] data) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[readOffset++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    /**
+     * Maps small negative numbers to small positive ones, so they stay short as varints.
+     */
+    private static int zigZag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unZigZag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
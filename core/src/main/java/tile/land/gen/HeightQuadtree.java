@@ -0,0 +1,270 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * The corner heights of one chunk, with the lowest and highest height under every square of
+ * tiles. The root square covers the chunk and every square splits in 4, down to single tiles,
+ * so a ray skips every square it passes over or under without looking at its tiles.
+ * <p>
+ * The surface of a tile is the bilinear blend of its 4 corner heights.
+ * Positions are local to the chunk, in tiles. Not thread safe, a ray is kept while it is traced.
+ */
+public class HeightQuadtree {
+    private static final float EPSILON = 1e-6f;
+
+    private final int chunkSize;
+    private final int corners;
+    /**
+     * The tiles along one side of the root square, the chunk size rounded up to a power of two.
+     * Squares outside the chunk are empty.
+     */
+    private final int rootSize;
+    /**
+     * The depth of the single tile squares, the root is depth 0.
+     */
+    private final int tileDepth;
+    private final float[] heights;
+    /**
+     * Per depth, the lowest and highest height of every square, stored row by row.
+     */
+    private final float[][] min;
+    private final float[][] max;
+    private boolean built;
+
+    // The ray being traced, local to the chunk
+    private float originX, originY, originZ;
+    private float directionX, directionY, directionZ;
+
+    /**
+     * @param chunkSize The length and width of a chunk in tiles.
+     */
+    public HeightQuadtree(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.corners = chunkSize + 1;
+        this.rootSize = MathUtils.nextPowerOfTwo(chunkSize);
+        this.tileDepth = Integer.numberOfTrailingZeros(rootSize);
+        this.heights = new float[corners * corners];
+        this.min = new float[tileDepth + 1][];
+        this.max = new float[tileDepth + 1][];
+        for (int depth = 0; depth <= tileDepth; depth++) {
+            min[depth] = new float[(1 << depth) * (1 << depth)];
+            max[depth] = new float[(1 << depth) * (1 << depth)];
+        }
+    }
+
+    /**
+     * Reads the corner heights of a chunk and works out every square.
+     */
+    public void build(HeightSource heightSource, int chunkX, int chunkZ) {
+        heightSource.getBlock(chunkX * chunkSize, chunkZ * chunkSize, corners, corners, heights);
+
+        // Single tiles, the ones outside the chunk are empty so nothing hits them
+        float[] tileMin = min[tileDepth];
+        float[] tileMax = max[tileDepth];
+        for (int z = 0; z < rootSize; z++) {
+            for (int x = 0; x < rootSize; x++) {
+                int node = z * rootSize + x;
+                if (x >= chunkSize || z >= chunkSize) {
+                    tileMin[node] = Float.POSITIVE_INFINITY;
+                    tileMax[node] = Float.NEGATIVE_INFINITY;
+                    continue;
+                }
+                int corner = z * corners + x;
+                float h00 = heights[corner], h10 = heights[corner + 1];
+                float h01 = heights[corner + corners], h11 = heights[corner + corners + 1];
+                tileMin[node] = Math.min(Math.min(h00, h10), Math.min(h01, h11));
+                tileMax[node] = Math.max(Math.max(h00, h10), Math.max(h01, h11));
+            }
+        }
+
+        // Every square holds its 4 children
+        for (int depth = tileDepth - 1; depth >= 0; depth--) {
+            int size = 1 << depth;
+            float[] childMin = min[depth + 1], childMax = max[depth + 1];
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    int child = 2 * z * 2 * size + 2 * x;
+                    int below = child + 2 * size;
+                    min[depth][z * size + x] = Math.min(Math.min(childMin[child], childMin[child + 1]), Math.min(childMin[below], childMin[below + 1]));
+                    max[depth][z * size + x] = Math.max(Math.max(childMax[child], childMax[child + 1]), Math.max(childMax[below], childMax[below + 1]));
+                }
+            }
+        }
+        built = true;
+    }
+
+    /**
+     * @return False if the tree was never built, or the heights of its chunk changed since.
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * Marks the tree to be built again before it is used.
+     */
+    public void invalidate() {
+        built = false;
+    }
+
+    /**
+     * @return The lowest height in the chunk.
+     */
+    public float getMinHeight() {
+        return min[0][0];
+    }
+
+    /**
+     * @return The highest height in the chunk.
+     */
+    public float getMaxHeight() {
+        return max[0][0];
+    }
+
+    /**
+     * Gets the height of the surface, positions outside the chunk are moved onto its edge.
+     *
+     * @param localX The local X position, from 0 to the chunk size.
+     * @param localZ The local Z position, from 0 to the chunk size.
+     */
+    public float getHeight(float localX, float localZ) {
+        localX = MathUtils.clamp(localX, 0f, chunkSize);
+        localZ = MathUtils.clamp(localZ, 0f, chunkSize);
+        int tileX = Math.min((int) localX, chunkSize - 1);
+        int tileZ = Math.min((int) localZ, chunkSize - 1);
+        float u = localX - tileX;
+        float v = localZ - tileZ;
+
+        int corner = tileZ * corners + tileX;
+        float h00 = heights[corner], h10 = heights[corner + 1];
+        float h01 = heights[corner + corners], h11 = heights[corner + corners + 1];
+        return h00 + (h10 - h00) * u + (h01 - h00) * v + (h00 - h10 - h01 + h11) * u * v;
+    }
+
+    /**
+     * Gets the up facing normal of the surface, positions outside the chunk are moved onto its edge.
+     *
+     * @param localX The local X position, from 0 to the chunk size.
+     * @param localZ The local Z position, from 0 to the chunk size.
+     * @param out    The vector to store the normal in.
+     * @return The out vector.
+     */
+    public Vector3 getNormal(float localX, float localZ, Vector3 out) {
+        localX = MathUtils.clamp(localX, 0f, chunkSize);
+        localZ = MathUtils.clamp(localZ, 0f, chunkSize);
+        int tileX = Math.min((int) localX, chunkSize - 1);
+        int tileZ = Math.min((int) localZ, chunkSize - 1);
+        float u = localX - tileX;
+        float v = localZ - tileZ;
+
+        int corner = tileZ * corners + tileX;
+        float h00 = heights[corner], h10 = heights[corner + 1];
+        float h01 = heights[corner + corners], h11 = heights[corner + corners + 1];
+        float cross = h00 - h10 - h01 + h11;
+        float slopeX = h10 - h00 + cross * v;
+        float slopeZ = h01 - h00 + cross * u;
+        return out.set(-slopeX, 1f, -slopeZ).nor();
+    }
+
+    /**
+     * Finds where a ray first hits the surface of the chunk, between two distances along it.
+     *
+     * @param origin    The start of the ray, local to the chunk.
+     * @param direction The direction of the ray, the distances are measured in its length.
+     * @param near      Where along the ray to start looking.
+     * @param far       Where along the ray to stop looking.
+     * @return The distance along the ray of the hit, or -1 if it misses.
+     */
+    public float intersect(Vector3 origin, Vector3 direction, float near, float far) {
+        originX = origin.x;
+        originY = origin.y;
+        originZ = origin.z;
+        directionX = direction.x;
+        directionY = direction.y;
+        directionZ = direction.z;
+        return intersectSquare(0, 0, 0, near, far);
+    }
+
+    private float intersectSquare(int depth, int squareX, int squareZ, float near, float far) {
+        int size = 1 << depth;
+        int node = squareZ * size + squareX;
+        float low = min[depth][node];
+        float high = max[depth][node];
+        if (low > high) return -1f;
+
+        // Clip the ray to the box of the square
+        float tiles = rootSize >> depth;
+        float x0 = squareX * tiles, z0 = squareZ * tiles;
+        if (directionX != 0f) {
+            float t0 = (x0 - originX) / directionX, t1 = (x0 + tiles - originX) / directionX;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        } else if (originX < x0 || originX > x0 + tiles) return -1f;
+        if (directionZ != 0f) {
+            float t0 = (z0 - originZ) / directionZ, t1 = (z0 + tiles - originZ) / directionZ;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        } else if (originZ < z0 || originZ > z0 + tiles) return -1f;
+        if (near > far + EPSILON) return -1f;
+
+        // Under the lowest height where it enters, it went in through the world edge or started underground
+        float enterY = originY + directionY * near;
+        if (enterY <= low) return near;
+        if (directionY < 0f) {
+            // Skip to where it drops below the highest height, it hits before it drops below the lowest
+            near = Math.max(near, (high - originY) / directionY);
+            far = Math.min(far, (low - originY) / directionY);
+        } else if (enterY > high) return -1f;
+        if (near > far + EPSILON) return -1f;
+
+        if (depth == tileDepth) return intersectTile(squareX, squareZ, near, far);
+
+        // Visit the children in the order the ray passes them, it can only pass one of the two side children
+        int firstX = directionX < 0f ? 1 : 0;
+        int firstZ = directionZ < 0f ? 1 : 0;
+        int childX = squareX * 2, childZ = squareZ * 2;
+        float hit = intersectSquare(depth + 1, childX + firstX, childZ + firstZ, near, far);
+        if (hit < 0f) hit = intersectSquare(depth + 1, childX + 1 - firstX, childZ + firstZ, near, far);
+        if (hit < 0f) hit = intersectSquare(depth + 1, childX + firstX, childZ + 1 - firstZ, near, far);
+        if (hit < 0f) hit = intersectSquare(depth + 1, childX + 1 - firstX, childZ + 1 - firstZ, near, far);
+        return hit;
+    }
+
+    /**
+     * Solves where the ray meets the bilinear surface of a tile. Along the ray the surface
+     * height is a quadratic of the distance, so the hit is the first root in range.
+     * A ray under the surface where it enters the tile hits it right there.
+     */
+    private float intersectTile(int tileX, int tileZ, float near, float far) {
+        int corner = tileZ * corners + tileX;
+        float h00 = heights[corner], h10 = heights[corner + 1];
+        float h01 = heights[corner + corners], h11 = heights[corner + corners + 1];
+        float slopeX = h10 - h00, slopeZ = h01 - h00, cross = h00 - h10 - h01 + h11;
+        float u = originX - tileX, v = originZ - tileZ;
+
+        // Ray height minus surface height: a * t^2 + b * t + c
+        float a = -cross * directionX * directionZ;
+        float b = directionY - (slopeX * directionX + slopeZ * directionZ + cross * (u * directionZ + v * directionX));
+        float c = originY - (h00 + slopeX * u + slopeZ * v + cross * u * v);
+
+        // Already under the surface where it enters the tile, through the world edge or starting underground
+        if ((a * near + b) * near + c <= 0f) return near;
+        if (Math.abs(a) < EPSILON) {
+            if (Math.abs(b) < EPSILON) return -1f;
+            return inRange(-c / b, near, far);
+        }
+        double discriminant = (double) b * b - 4.0 * a * c;
+        if (discriminant < 0.0) return -1f;
+        // The stable form, the textbook one loses every digit when a is tiny
+        double q = -0.5 * (b + Math.copySign(Math.sqrt(discriminant), b));
+        float t0 = (float) (q / a), t1 = q == 0.0 ? t0 : (float) (c / q);
+        float first = inRange(Math.min(t0, t1), near, far);
+        return first >= 0f ? first : inRange(Math.max(t0, t1), near, far);
+    }
+
+    private static float inRange(float t, float near, float far) {
+        return t >= near - EPSILON && t <= far + EPSILON && t >= 0f ? Math.max(t, near) : -1f;
+    }
+}
@@ -0,0 +1,29 @@
+package tile.land.gen;
+
+/**
+ * Gives the height of every tile corner in the world. Implementations must be safe to read
+ * from several threads at once, chunks are meshed in parallel.
+ */
+public interface HeightSource {
+
+    /**
+     * Gets the height at a tile corner.
+     *
+     * @param x The world X location of the corner.
+     * @param z The world Z location of the corner.
+     * @return The height.
+     */
+    float getHeight(int x, int z);
+
+    /**
+     * Fills a block of heights at once, row by row, so {@code dst[localZ * blockWidth + localX]}
+     * holds the height at {@code (x + localX, z + localZ)}. A whole chunk is fetched with one call.
+     *
+     * @param x          The x location of the block.
+     * @param z          The z location of the block.
+     * @param blockWidth The number of heights along the X axis.
+     * @param blockDepth The number of heights along the Z axis.
+     * @param dst        The array to fill.
+     */
+    void getBlock(int x, int z, int blockWidth, int blockDepth, float[] dst);
+}
@@ -3,55 +3,214 @@ package tile.land.gen;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.utils.Disposable;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static tile.land.gen.Constants.*;
 
 /**
- * Process a Heightmap based on an image file.
+ * Process a Heightmap based on an image file. The image is decoded once into a flat
+ * heightfield, so sampling it afterwards is a plain array read. The heightfield can also
+ * be filled from any other {@link HeightSource}, and is where edits to the terrain are kept.
  */
-public class HeightmapProcessor implements Disposable {
+@Getter
+public class HeightmapProcessor implements HeightSource, Disposable {
+    /**
+     * The world size and height the image is decoded for.
+     */
+    private final WorldConfig worldConfig;
+
+    /**
+     * The decoded heights, one per pixel, stored row by row ({@code heights[z * width + x]}).
+     */
+    private float[] heights;
+    private int width, depth;
 
-    private Pixmap heightmapImage;
+    public HeightmapProcessor() {
+        this(WorldConfig.DEFAULT);
+    }
+
+    public HeightmapProcessor(WorldConfig worldConfig) {
+        this.worldConfig = worldConfig;
+    }
 
     /**
      * Set the image to be used as a heightmap for the terrain generation.
+     * The image is decoded and freed straight away.
      *
      * @param fileHandle The image file.
      */
     public void setHeightmapImage(FileHandle fileHandle) {
-        if (heightmapImage != null) heightmapImage.dispose();
-        heightmapImage = new Pixmap(fileHandle);
-
-        int worldXLength = CHUNK_SIZE * WORLD_X_LENGTH;
-        int worldZLength = CHUNK_SIZE * WORLD_Z_LENGTH;
-        int supportedXLength = heightmapImage.getWidth() / CHUNK_SIZE;
-        int supportedZLength = heightmapImage.getHeight() / CHUNK_SIZE;
-
-        if (worldXLength > heightmapImage.getWidth() || worldZLength > heightmapImage.getHeight()) {
-            throw new RuntimeException("The world length or width is larger than this heightmap " + fileHandle.name() + " supports.\n" +
-                "Max World X Length Supported: " + supportedXLength + ", Length Supplied: " + WORLD_X_LENGTH + "\n" +
-                "Max World Z Length Supported: " + supportedZLength + ", Length Supplied: " + WORLD_Z_LENGTH);
+        setHeightmapImage(fileHandle, worldConfig.getWorldXLength(), worldConfig.getWorldZLength());
+    }
+
+    /**
+     * Set the image to be used as a heightmap for a world of the given size.
+     * The image is decoded and freed straight away.
+     *
+     * @param fileHandle   The image file.
+     * @param worldXChunks The X length of the world in chunks.
+     * @param worldZChunks The Z length of the world in chunks.
+     */
+    public void setHeightmapImage(FileHandle fileHandle, int worldXChunks, int worldZChunks) {
+        Pixmap heightmapImage = new Pixmap(fileHandle);
+        try {
+            int worldXLength = worldConfig.getChunkSize() * worldXChunks;
+            int worldZLength = worldConfig.getChunkSize() * worldZChunks;
+            int supportedXLength = heightmapImage.getWidth() / worldConfig.getChunkSize();
+            int supportedZLength = heightmapImage.getHeight() / worldConfig.getChunkSize();
+
+            if (worldXLength > heightmapImage.getWidth() || worldZLength > heightmapImage.getHeight()) {
+                throw new RuntimeException("The world length or width is larger than this heightmap " + fileHandle.name() + " supports.\n" +
+                    "Max World X Length Supported: " + supportedXLength + ", Length Supplied: " + worldXChunks + "\n" +
+                    "Max World Z Length Supported: " + supportedZLength + ", Length Supplied: " + worldZChunks);
+            }
+
+            decode(heightmapImage);
+        } finally {
+            heightmapImage.dispose();
+        }
+    }
+
+    /**
+     * Replaces the heightfield with a flat one of the given size, to be filled in later.
+     *
+     * @param width The number of heights along the X axis.
+     * @param depth The number of heights along the Z axis.
+     */
+    public void setSize(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        heights = new float[width * depth];
+    }
+
+    /**
+     * Fills the heightfield from another height source, a band of rows per task.
+     *
+     * @param source The heights to copy.
+     * @param width  The number of heights along the X axis.
+     * @param depth  The number of heights along the Z axis.
+     * @param pool   The pool that runs the tasks.
+     */
+    public void generate(HeightSource source, int width, int depth, ForkJoinPool pool) {
+        setSize(width, depth);
+
+        final int bandDepth = Math.max(1, Math.min(worldConfig.getChunkSize(), depth));
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int z = 0; z < depth; z += bandDepth) {
+            final int bandZ = z;
+            final int rows = Math.min(bandDepth, depth - z);
+            tasks.add(pool.submit(() -> {
+                float[] band = new float[width * rows];
+                source.getBlock(0, bandZ, width, rows, band);
+                System.arraycopy(band, 0, heights, bandZ * width, band.length);
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) task.join();
+    }
+
+    /**
+     * Converts every pixel of the image into a height value. Method made by
+     * <a href="https://github.com/tommyettinger">Tommy Ettinger</a>.
+     *
+     * @param heightmapImage The image to decode.
+     */
+    private void decode(Pixmap heightmapImage) {
+        width = heightmapImage.getWidth();
+        depth = heightmapImage.getHeight();
+        heights = new float[width * depth];
+
+        int index = 0;
+        for (int z = 0; z < depth; z++) {
+            for (int x = 0; x < width; x++) {
+                // Gets pixel as RGBA8888
+                // Isolates red channel, from 0 to 255 after this
+                // 0.0f to 1.0f now
+                // 0.0f to the max height now
+                heights[index++] = (heightmapImage.getPixel(x, z) >>> 24) / 255f * worldConfig.getMaxHeight();
+            }
         }
     }
 
     /**
-     * Gets a pixel at the given x and z location. We then use that pixels color to
-     * find a height value. Method made by <a href="https://github.com/tommyettinger">Tommy Ettinger</a>.
+     * Gets the height at the given x and z location. Locations outside the heightmap
+     * have a height of 0, the same as reading outside the image would give.
      *
      * @param x The x location of a heightmap pixel.
      * @param z The z (Y) location of a heightmap pixel.
      * @return The height value based on the pixels color.
      */
+    @Override
     public float getHeight(int x, int z) {
-        // Gets pixel as RGBA8888
-        // Isolates red channel, from 0 to 255 after this
-        // 0.0f to 1.0f now
-        // 0.0f to MAX_HEIGHT now
-        return (heightmapImage.getPixel(x, z) >>> 24) / 255f * MAX_HEIGHT;
+        if (x < 0 || z < 0 || x >= width || z >= depth) return 0f;
+        return heights[z * width + x];
+    }
+
+    /**
+     * Sets the height at the given x and z location. Locations outside the heightmap are ignored.
+     *
+     * @param x      The x location of a heightmap pixel.
+     * @param z      The z (Y) location of a heightmap pixel.
+     * @param height The new height value.
+     */
+    public void setHeight(int x, int z, float height) {
+        if (x < 0 || z < 0 || x >= width || z >= depth) return;
+        heights[z * width + x] = height;
+    }
+
+    /**
+     * Copies a run of heights along the X axis.
+     *
+     * @param x         The first x location to copy.
+     * @param z         The z location of the row.
+     * @param length    The number of heights to copy.
+     * @param dst       The array to copy the heights into.
+     * @param dstOffset The first index in the dst array to write to.
+     */
+    public void getRow(int x, int z, int length, float[] dst, int dstOffset) {
+        // Clip the run to the heightmap, anything outside it has a height of 0
+        int start = Math.max(0, Math.min(length, -x));
+        int end = Math.max(start, Math.min(length, width - x));
+        if (z < 0 || z >= depth) start = end = length;
+
+        for (int i = 0; i < start; i++) dst[dstOffset + i] = 0f;
+        if (end > start) System.arraycopy(heights, z * width + x + start, dst, dstOffset + start, end - start);
+        for (int i = end; i < length; i++) dst[dstOffset + i] = 0f;
+    }
+
+    /**
+     * Overwrites a run of heights along the X axis. Heights outside the heightmap are skipped.
+     *
+     * @param x         The first x location to write.
+     * @param z         The z location of the row.
+     * @param length    The number of heights to write.
+     * @param src       The array holding the new heights.
+     * @param srcOffset The first index in the src array to read from.
+     */
+    public void setRow(int x, int z, int length, float[] src, int srcOffset) {
+        if (z < 0 || z >= depth) return;
+        int start = Math.max(0, Math.min(length, -x));
+        int end = Math.max(start, Math.min(length, width - x));
+        if (end > start) System.arraycopy(src, srcOffset + start, heights, z * width + x + start, end - start);
+    }
+
+    /**
+     * Copies a block of heights a row at a time.
+     */
+    @Override
+    public void getBlock(int x, int z, int blockWidth, int blockDepth, float[] dst) {
+        for (int localZ = 0; localZ < blockDepth; localZ++) {
+            getRow(x, z + localZ, blockWidth, dst, localZ * blockWidth);
+        }
     }
 
     @Override
     public void dispose() {
-        if (!heightmapImage.isDisposed()) heightmapImage.dispose();
+        heights = null;
+        width = depth = 0;
     }
 }
@@ -3,6 +3,7 @@ package tile.land.gen;
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
@@ -13,6 +14,7 @@ import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
 import com.badlogic.gdx.graphics.g3d.utils.FirstPersonCameraController;
 import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.StringBuilder;
 
 /**
@@ -30,9 +32,23 @@ public class Main extends ApplicationAdapter {
      */
     private final ModelBuilder modelBuilder = new ModelBuilder();
     /**
-     * ModelCache to be rendered.
+     * ModelCache to be rendered. The chunks are merged a region at a time by the {@link RegionBatcher} instead.
      */
     private final ModelCache modelCache = new ModelCache();
+    /**
+     * Chunks that can't be merged into the model cache, rendered as they are.
+     */
+    private final Array<RenderableProvider> renderables = new Array<>();
+    /**
+     * Timings and counters shown in the debug overlay, exported with F5 (CSV) and F6 (JSON).
+     */
+    private final PerformanceMetrics metrics = new PerformanceMetrics();
+    /**
+     * Sculpts the ground under the cursor while B is held, N picks the next mode.
+     */
+    private final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.SMOOTH, 16, 0.2f);
+    private final Vector3 brushHit = new Vector3();
+    private boolean sculpting;
     /**
      * Handles the creation of land chunks.
      */
@@ -66,6 +82,9 @@ public class Main extends ApplicationAdapter {
         camera.far = 1000f;
         camera.update();
 
+        // Init Metrics
+        metrics.enableProfiler();
+
         // Init Input
         InputMultiplexer inputMultiplexer = new InputMultiplexer();
         camController = new FirstPersonCameraController(camera);
@@ -77,26 +96,76 @@ public class Main extends ApplicationAdapter {
         xyzModel = modelBuilder.createXYZCoordinates(10, new Material(), VertexAttributes.Usage.Position | VertexAttributes.Usage.ColorUnpacked);
         xyzModelInstance = new ModelInstance(xyzModel);
         xyzModelInstance.transform.translate(0, 0, 0);
+        modelCache.begin();
+        modelCache.add(xyzModelInstance);
+        modelCache.end();
 
-        // Init the ChunkHandler
-        chunkHandler = new ChunkHandler(stringBuilder, modelBuilder, camera);
+        // Init the ChunkHandler, the world size, view radius and max height can be picked per map here
+        chunkHandler = new ChunkHandler(stringBuilder, modelBuilder, camera, metrics, WorldConfig.DEFAULT);
         chunkHandler.create();
 
         // Init Scene2D and VisUI
-        stageHandler = new StageHandler(stringBuilder, camera, chunkHandler);
+        stageHandler = new StageHandler(stringBuilder, camera, chunkHandler, metrics);
         stageHandler.create();
     }
 
     private void updateModelInstanceList() {
-        if (!chunkHandler.hasLeftChunk()) return;
-        modelCache.begin();
-        modelCache.add(xyzModelInstance);
-        chunkHandler.getNearbyChunks(modelCache);
-        modelCache.end();
+        boolean edited = chunkHandler.flushEdits();
+        boolean uploaded = chunkHandler.uploadChunks();
+        if (!chunkHandler.hasViewChanged() && !edited && !uploaded) return;
+        long start = System.nanoTime();
+        renderables.clear();
+        chunkHandler.getNearbyChunks(renderables);
+        metrics.recordCacheRebuild(System.nanoTime() - start);
+    }
+
+    /**
+     * Applies the brush under the cursor every frame B is held, one hold is one undo stroke.
+     */
+    private void sculpt() {
+        if (Gdx.input.isKeyJustPressed(Input.Keys.N)) {
+            TerrainBrush.Mode[] modes = TerrainBrush.Mode.values();
+            brush.setMode(modes[(brush.getMode().ordinal() + 1) % modes.length]);
+            System.out.println("[BRUSH] Mode: " + brush.getMode());
+        }
+
+        if (!Gdx.input.isKeyPressed(Input.Keys.B)) {
+            if (sculpting) chunkHandler.endStroke();
+            sculpting = false;
+            return;
+        }
+        if (!sculpting) chunkHandler.beginStroke();
+        sculpting = true;
+        if (chunkHandler.intersectRay(camera.getPickRay(Gdx.input.getX(), Gdx.input.getY()), brushHit)) {
+            chunkHandler.applyBrush(brush, brushHit.x, brushHit.z);
+        }
+    }
+
+    /**
+     * Undoes the last height edit stroke on Ctrl+Z, and redoes it on Ctrl+Y.
+     */
+    private void undoEdits() {
+        if (!Gdx.input.isKeyPressed(Input.Keys.CONTROL_LEFT) && !Gdx.input.isKeyPressed(Input.Keys.CONTROL_RIGHT)) return;
+        if (Gdx.input.isKeyJustPressed(Input.Keys.Z)) chunkHandler.undo();
+        if (Gdx.input.isKeyJustPressed(Input.Keys.Y)) chunkHandler.redo();
+    }
+
+    /**
+     * Writes the metrics to the local metrics directory when asked to.
+     */
+    private void exportMetrics() {
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F5)) {
+            metrics.exportCsv(Gdx.files.local("metrics/metrics-" + System.currentTimeMillis() + ".csv"));
+        }
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F6)) {
+            metrics.exportJson(Gdx.files.local("metrics/metrics-" + System.currentTimeMillis() + ".json"));
+        }
     }
 
     @Override
     public void render() {
+        sculpt();
+        undoEdits();
         updateModelInstanceList();
         camController.update();
         stageHandler.updateDebugText();
@@ -106,9 +175,14 @@ public class Main extends ApplicationAdapter {
 
         modelBatch.begin(camera);
         modelBatch.render(modelCache, environment);
+        chunkHandler.getRegionBatcher().render(modelBatch, environment, camera);
+        modelBatch.render(renderables, environment);
         modelBatch.end();
 
         stageHandler.render();
+
+        metrics.endFrame(Gdx.graphics.getDeltaTime());
+        exportMetrics();
     }
 
     @Override
@@ -0,0 +1,128 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.MathUtils;
+import lombok.Getter;
+
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * Procedural heights from seeded fractal gradient noise. There is no image to run out of,
+ * so the world can be any size. Every height only depends on the seed and its location,
+ * and nothing is stored, so the same seed always gives the same world and any number of
+ * threads can read it at once.
+ */
+@Getter
+public class NoiseHeightSource implements HeightSource {
+    private final int seed;
+    /**
+     * The width of the largest features, in tiles.
+     */
+    private final float featureSize;
+    /**
+     * The number of noise layers added together, every layer has twice the detail and half the height of the last.
+     */
+    private final int octaves;
+    /**
+     * The height of the highest land.
+     */
+    private final float maxHeight;
+
+    public NoiseHeightSource(int seed, float featureSize, int octaves) {
+        this(seed, featureSize, octaves, MAX_HEIGHT);
+    }
+
+    public NoiseHeightSource(int seed, float featureSize, int octaves, float maxHeight) {
+        this.seed = seed;
+        this.featureSize = featureSize;
+        this.octaves = octaves;
+        this.maxHeight = maxHeight;
+    }
+
+    @Override
+    public float getHeight(int x, int z) {
+        return sample(x, z);
+    }
+
+    @Override
+    public void getBlock(int x, int z, int blockWidth, int blockDepth, float[] dst) {
+        int index = 0;
+        for (int localZ = 0; localZ < blockDepth; localZ++) {
+            for (int localX = 0; localX < blockWidth; localX++) {
+                dst[index++] = sample(x + localX, z + localZ);
+            }
+        }
+    }
+
+    /**
+     * Adds up every octave, then maps the sum from -1 - 1 to 0 - the max height.
+     */
+    private float sample(int x, int z) {
+        float frequency = 1f / featureSize;
+        float amplitude = 1f;
+        float sum = 0f;
+        float range = 0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            sum += noise(x * frequency, z * frequency, seed + octave * 0x9E3779B9) * amplitude;
+            range += amplitude;
+            frequency *= 2f;
+            amplitude *= 0.5f;
+        }
+        return MathUtils.clamp((sum / range * 0.5f + 0.5f) * maxHeight, 0f, maxHeight);
+    }
+
+    /**
+     * 2D gradient noise, about -1 - 1.
+     */
+    private static float noise(float x, float z, int seed) {
+        int x0 = MathUtils.floor(x);
+        int z0 = MathUtils.floor(z);
+        float fx = x - x0;
+        float fz = z - z0;
+
+        float n00 = gradient(hash(seed, x0, z0), fx, fz);
+        float n10 = gradient(hash(seed, x0 + 1, z0), fx - 1f, fz);
+        float n01 = gradient(hash(seed, x0, z0 + 1), fx, fz - 1f);
+        float n11 = gradient(hash(seed, x0 + 1, z0 + 1), fx - 1f, fz - 1f);
+
+        float u = fade(fx);
+        float v = fade(fz);
+        float south = n00 + (n10 - n00) * u;
+        float north = n01 + (n11 - n01) * u;
+        return south + (north - south) * v;
+    }
+
+    /**
+     * Picks one of 8 gradient directions and takes the dot product with the offset.
+     */
+    private static float gradient(int hash, float x, float z) {
+        switch (hash & 7) {
+            case 0:
+                return x + z;
+            case 1:
+                return -x + z;
+            case 2:
+                return x - z;
+            case 3:
+                return -x - z;
+            case 4:
+                return x;
+            case 5:
+                return -x;
+            case 6:
+                return z;
+            default:
+                return -z;
+        }
+    }
+
+    private static float fade(float t) {
+        return t * t * t * (t * (t * 6f - 15f) + 10f);
+    }
+
+    private static int hash(int seed, int x, int z) {
+        int hash = seed ^ x * 0x27D4EB2D ^ z * 0x165667B1;
+        hash = (hash ^ hash >>> 15) * 0x2C1B3C6D;
+        hash = (hash ^ hash >>> 12) * 0x297A2D39;
+        return hash ^ hash >>> 15;
+    }
+}
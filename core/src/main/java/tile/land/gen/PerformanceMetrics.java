@@ -0,0 +1,264 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+import com.badlogic.gdx.utils.StringBuilder;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Collects the numbers needed to spot performance regressions: chunk generation split into
+ * CPU meshing and GL upload, model cache rebuilds, frame time percentiles, draw calls and
+ * vertices from a {@link GLProfiler}, chunk residency, the triangles merged tiles saved and the
+ * bytes allocated every frame.
+ * Everything can be exported to CSV or JSON. Recording is allocation free, exporting is not.
+ */
+@Getter
+public class PerformanceMetrics {
+    /**
+     * How many of the latest frame times the percentiles are taken over.
+     */
+    public static final int FRAME_SAMPLES = 600;
+    private static final float NANOS_PER_MILLI = 1_000_000f;
+
+    @Getter(AccessLevel.NONE)
+    private final float[] frameTimes = new float[FRAME_SAMPLES];
+    @Getter(AccessLevel.NONE)
+    private final float[] sortedFrameTimes = new float[FRAME_SAMPLES];
+    private int frameCount;
+    private int frameSamples;
+
+    @Getter(AccessLevel.NONE)
+    private GLProfiler profiler;
+    private int drawCalls, vertexCount, shaderSwitches, textureBindings;
+
+    private long chunksGenerated;
+    private long meshNanos, maxMeshNanos;
+    private long uploadNanos, maxUploadNanos;
+
+    /**
+     * The triangles of every chunk the tiles were merged for, and the triangles they had unmerged.
+     */
+    private long mergedTriangles, unmergedTriangles;
+
+    private long cacheRebuilds;
+    private long lastCacheRebuildNanos, cacheRebuildNanos, maxCacheRebuildNanos;
+
+    private int residentChunks;
+    private long residentBytes;
+
+    @Getter(AccessLevel.NONE)
+    private final AllocationCounter allocationCounter = new AllocationCounter();
+    /**
+     * The bytes the render thread allocated in the last frame, and the most in any frame.
+     * A steady frame, with no chunks loaded or edited, should allocate nothing.
+     */
+    private long frameAllocatedBytes, maxFrameAllocatedBytes;
+
+    /**
+     * Starts counting GL calls. Needs a GL context, the rest of the metrics don't.
+     */
+    public void enableProfiler() {
+        profiler = new GLProfiler(Gdx.graphics);
+        profiler.enable();
+    }
+
+    /**
+     * Ends a frame: stores its time, the bytes it allocated and the GL counters of the frame, then resets them.
+     * Call this on the render thread, the allocations of the calling thread are counted.
+     *
+     * @param deltaTime The time the frame took, in seconds.
+     */
+    public void endFrame(float deltaTime) {
+        frameTimes[frameCount % FRAME_SAMPLES] = deltaTime * 1000f;
+        frameCount++;
+        frameSamples = Math.min(frameCount, FRAME_SAMPLES);
+
+        frameAllocatedBytes = allocationCounter.sample();
+        // The first frame also counts everything allocated while starting up
+        if (frameCount > 1) maxFrameAllocatedBytes = Math.max(maxFrameAllocatedBytes, frameAllocatedBytes);
+
+        if (profiler != null) {
+            drawCalls = profiler.getDrawCalls();
+            vertexCount = (int) profiler.getVertexCount().total;
+            shaderSwitches = profiler.getShaderSwitches();
+            textureBindings = profiler.getTextureBindings();
+            profiler.reset();
+        }
+    }
+
+    /**
+     * Records how long one chunk took to generate.
+     *
+     * @param meshNanos   The CPU time spent building its vertices and indices.
+     * @param uploadNanos The time spent uploading its meshes on the render thread.
+     */
+    public void recordChunk(long meshNanos, long uploadNanos) {
+        chunksGenerated++;
+        this.meshNanos += meshNanos;
+        this.uploadNanos += uploadNanos;
+        maxMeshNanos = Math.max(maxMeshNanos, meshNanos);
+        maxUploadNanos = Math.max(maxUploadNanos, uploadNanos);
+    }
+
+    /**
+     * Records the tiles of one chunk being merged.
+     *
+     * @param triangles         The triangles left after merging.
+     * @param unmergedTriangles The triangles of every tile.
+     */
+    public void recordTileMerge(int triangles, int unmergedTriangles) {
+        mergedTriangles += triangles;
+        this.unmergedTriangles += unmergedTriangles;
+    }
+
+    public void recordCacheRebuild(long nanos) {
+        cacheRebuilds++;
+        lastCacheRebuildNanos = nanos;
+        cacheRebuildNanos += nanos;
+        maxCacheRebuildNanos = Math.max(maxCacheRebuildNanos, nanos);
+    }
+
+    /**
+     * @param residentChunks The chunks with their models loaded.
+     * @param residentBytes  The estimated GPU memory of their meshes.
+     */
+    public void setResidency(int residentChunks, long residentBytes) {
+        this.residentChunks = residentChunks;
+        this.residentBytes = residentBytes;
+    }
+
+    /**
+     * Gets a frame time percentile over the latest {@link #FRAME_SAMPLES} frames.
+     * Call {@link #sortFrameTimes()} first, after the frames of interest ended.
+     *
+     * @param percentile From 0 to 1.
+     * @return The frame time in milliseconds.
+     */
+    public float getFrameTimePercentile(float percentile) {
+        if (frameSamples == 0) return 0f;
+        int index = Math.min(frameSamples - 1, (int) (percentile * frameSamples));
+        return sortedFrameTimes[index];
+    }
+
+    /**
+     * Sorts a copy of the latest frame times, so percentiles can be read. Allocation free, so it
+     * can run every frame: {@link java.util.Arrays#sort(float[])} may allocate a work array when
+     * the input is partly sorted, which steady frame times are.
+     */
+    public void sortFrameTimes() {
+        System.arraycopy(frameTimes, 0, sortedFrameTimes, 0, frameSamples);
+
+        // Shell sort, in place
+        for (int gap = frameSamples / 2; gap > 0; gap /= 2) {
+            for (int i = gap; i < frameSamples; i++) {
+                float time = sortedFrameTimes[i];
+                int j = i;
+                for (; j >= gap && sortedFrameTimes[j - gap] > time; j -= gap) {
+                    sortedFrameTimes[j] = sortedFrameTimes[j - gap];
+                }
+                sortedFrameTimes[j] = time;
+            }
+        }
+    }
+
+    public float getAverageMeshMillis() {
+        return chunksGenerated == 0 ? 0f : meshNanos / (float) chunksGenerated / NANOS_PER_MILLI;
+    }
+
+    public float getAverageUploadMillis() {
+        return chunksGenerated == 0 ? 0f : uploadNanos / (float) chunksGenerated / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return The part of the triangles merging tiles took away, 0 - 100.
+     */
+    public float getTileMergeReduction() {
+        return unmergedTriangles == 0 ? 0f : 100f - mergedTriangles * 100f / unmergedTriangles;
+    }
+
+    public float getLastCacheRebuildMillis() {
+        return lastCacheRebuildNanos / NANOS_PER_MILLI;
+    }
+
+    public float getAverageCacheRebuildMillis() {
+        return cacheRebuilds == 0 ? 0f : cacheRebuildNanos / (float) cacheRebuilds / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Writes every metric as a metric,value row, followed by the latest frame times.
+     *
+     * @param fileHandle The file to write.
+     */
+    public void exportCsv(FileHandle fileHandle) {
+        sortFrameTimes();
+        StringBuilder csv = new StringBuilder();
+        csv.append("metric,value\n");
+        forEachMetric((name, value) -> csv.append(name).append(',').append(value).append('\n'));
+        for (int i = 0; i < frameSamples; i++) {
+            csv.append("frame_time_ms,").append(getFrameTime(i)).append('\n');
+        }
+        fileHandle.writeString(csv.toString(), false);
+        System.out.println("[METRICS] Exported " + fileHandle.path());
+    }
+
+    /**
+     * Writes every metric as a JSON object, the latest frame times go in the frame_times_ms array.
+     *
+     * @param fileHandle The file to write.
+     */
+    public void exportJson(FileHandle fileHandle) {
+        sortFrameTimes();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        forEachMetric((name, value) -> json.append("  \"").append(name).append("\": ").append(value).append(",\n"));
+        json.append("  \"frame_times_ms\": [");
+        for (int i = 0; i < frameSamples; i++) {
+            if (i > 0) json.append(", ");
+            json.append(getFrameTime(i));
+        }
+        json.append("]\n}\n");
+        fileHandle.writeString(json.toString(), false);
+        System.out.println("[METRICS] Exported " + fileHandle.path());
+    }
+
+    /**
+     * Gets a frame time, oldest first.
+     */
+    private float getFrameTime(int sample) {
+        int oldest = frameCount - frameSamples;
+        return frameTimes[(oldest + sample) % FRAME_SAMPLES];
+    }
+
+    private void forEachMetric(MetricConsumer consumer) {
+        consumer.accept("frames", frameCount);
+        consumer.accept("frame_time_p50_ms", getFrameTimePercentile(0.5f));
+        consumer.accept("frame_time_p95_ms", getFrameTimePercentile(0.95f));
+        consumer.accept("frame_time_p99_ms", getFrameTimePercentile(0.99f));
+        consumer.accept("frame_time_max_ms", getFrameTimePercentile(1f));
+        consumer.accept("draw_calls", drawCalls);
+        consumer.accept("vertices", vertexCount);
+        consumer.accept("shader_switches", shaderSwitches);
+        consumer.accept("texture_bindings", textureBindings);
+        consumer.accept("chunks_generated", chunksGenerated);
+        consumer.accept("chunk_mesh_avg_ms", getAverageMeshMillis());
+        consumer.accept("chunk_mesh_max_ms", maxMeshNanos / NANOS_PER_MILLI);
+        consumer.accept("chunk_upload_avg_ms", getAverageUploadMillis());
+        consumer.accept("chunk_upload_max_ms", maxUploadNanos / NANOS_PER_MILLI);
+        consumer.accept("merged_triangles", mergedTriangles);
+        consumer.accept("unmerged_triangles", unmergedTriangles);
+        consumer.accept("tile_merge_reduction_pct", getTileMergeReduction());
+        consumer.accept("cache_rebuilds", cacheRebuilds);
+        consumer.accept("cache_rebuild_avg_ms", getAverageCacheRebuildMillis());
+        consumer.accept("cache_rebuild_max_ms", maxCacheRebuildNanos / NANOS_PER_MILLI);
+        consumer.accept("resident_chunks", residentChunks);
+        consumer.accept("resident_bytes", residentBytes);
+        consumer.accept("frame_alloc_bytes", frameAllocatedBytes);
+        consumer.accept("frame_alloc_max_bytes", maxFrameAllocatedBytes);
+    }
+
+    private interface MetricConsumer {
+        void accept(String name, Object value);
+    }
+}
@@ -0,0 +1,145 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.g3d.Environment;
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+import com.badlogic.gdx.graphics.g3d.ModelCache;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+import lombok.Getter;
+
+import static tile.land.gen.Constants.BATCH_REGION_SIZE;
+
+/**
+ * Merges the chunks of a square of {@link Constants#BATCH_REGION_SIZE} chunks per side into one
+ * {@link ModelCache}, so a region is drawn with a few large draw calls instead of one per chunk.
+ * <p>
+ * Chunks are gathered every time the view changes, but a region is only merged again when its
+ * chunks, their levels of detail or their meshes changed. Whole regions are culled when drawn.
+ */
+public class RegionBatcher implements Disposable {
+    private final LongMap<Region> regions = new LongMap<>();
+    /**
+     * The regions gathered in the current pass, these are the ones drawn.
+     */
+    private final Array<Region> activeRegions = new Array<>();
+    private long pass;
+    /**
+     * How many times a region was merged again.
+     */
+    @Getter
+    private long rebuilds;
+
+    /**
+     * Starts gathering the chunks in view.
+     */
+    public void begin() {
+        pass++;
+        activeRegions.clear();
+    }
+
+    /**
+     * Adds a loaded chunk to the region it is in.
+     *
+     * @param chunk The chunk.
+     * @param level The level of detail to draw it at.
+     */
+    public void add(Chunk chunk, int level) {
+        int regionX = Math.floorDiv(chunk.getChunkX(), BATCH_REGION_SIZE);
+        int regionZ = Math.floorDiv(chunk.getChunkZ(), BATCH_REGION_SIZE);
+        long key = Chunk.Key.pack(regionX, regionZ);
+
+        Region region = regions.get(key);
+        if (region == null) {
+            region = new Region();
+            regions.put(key, region);
+        }
+        if (region.pass != pass) {
+            region.pass = pass;
+            region.clear();
+            activeRegions.add(region);
+        }
+        region.add(chunk, level);
+    }
+
+    /**
+     * Merges the regions whose chunks changed, and frees the regions that are out of view.
+     */
+    public void end() {
+        for (int i = 0; i < activeRegions.size; i++) {
+            Region region = activeRegions.get(i);
+            if (region.signature == region.builtSignature) continue;
+            region.rebuild();
+            rebuilds++;
+        }
+
+        LongMap.Entries<Region> entries = regions.entries();
+        while (entries.hasNext()) {
+            Region region = entries.next().value;
+            if (region.pass == pass) continue;
+            region.dispose();
+            entries.remove();
+        }
+    }
+
+    /**
+     * Draws every gathered region inside the camera frustum.
+     */
+    public void render(ModelBatch modelBatch, Environment environment, Camera camera) {
+        for (int i = 0; i < activeRegions.size; i++) {
+            Region region = activeRegions.get(i);
+            if (camera.frustum.boundsInFrustum(region.bounds)) modelBatch.render(region.cache, environment);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (Region region : regions.values()) region.dispose();
+        regions.clear();
+        activeRegions.clear();
+    }
+
+    private static class Region implements Disposable {
+        private final ModelCache cache = new ModelCache();
+        private final Array<Chunk> chunks = new Array<>();
+        private final IntArray levels = new IntArray();
+        private final BoundingBox bounds = new BoundingBox();
+        private long pass;
+        /**
+         * A hash of every chunk gathered, its level and its mesh version, and the one the cache was built with.
+         */
+        private long signature, builtSignature;
+
+        private void clear() {
+            chunks.clear();
+            levels.clear();
+            bounds.inf();
+            signature = 17;
+        }
+
+        private void add(Chunk chunk, int level) {
+            chunks.add(chunk);
+            levels.add(level);
+            bounds.ext(chunk.getBoundingBox());
+
+            signature = signature * 0x9E3779B97F4A7C15L + Chunk.Key.pack(chunk.getChunkX(), chunk.getChunkZ());
+            signature = signature * 0x9E3779B97F4A7C15L + ((long) level << 32 | chunk.getMeshVersion() & 0xFFFFFFFFL);
+        }
+
+        private void rebuild() {
+            cache.begin();
+            for (int i = 0; i < chunks.size; i++) cache.add(chunks.get(i).getRenderable(levels.get(i)));
+            cache.end();
+            builtSignature = signature;
+        }
+
+        @Override
+        public void dispose() {
+            cache.dispose();
+            chunks.clear();
+        }
+    }
+}
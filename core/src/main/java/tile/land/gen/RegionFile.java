@@ -0,0 +1,207 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static tile.land.gen.Constants.REGION_SIZE;
+
+/**
+ * One file holding the saved data of a square of {@link Constants#REGION_SIZE} chunks per side.
+ * <p>
+ * The file starts with a header and an offset table with an (offset, length) entry per chunk,
+ * a length of 0 meaning the chunk was never saved. Chunk records follow, each starting on a
+ * {@link #SECTOR_BYTES} boundary. A record that outgrows its sectors is moved to the end of the file.
+ * <p>
+ * The whole file is mapped once and read and written in place, so reading a chunk only touches
+ * the pages of its own record. The mapping only grows, by doubling, when a record is written past
+ * its end. Writes reach the disk on {@link #flush()}, once per save instead of once per chunk.
+ */
+public class RegionFile implements Disposable {
+    private static final int MAGIC = 0x544C5247; // TLRG
+    private static final int SECTOR_BYTES = 1024;
+    private static final int HEADER_BYTES = 8;
+    private static final int TABLE_BYTES = REGION_SIZE * REGION_SIZE * 8;
+    /**
+     * A chunk record holds its heights, then the id of every tile type. Records saved
+     * before tile types existed end after the heights.
+     */
+    private final int heightBytes;
+    private final int tileBytes;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    /**
+     * The header, offset table and records, mapped for the whole time the file is open.
+     * It can reach past the last record, the file is as long as the mapping.
+     */
+    private MappedByteBuffer buffer;
+    /**
+     * Where the next moved or new record is written.
+     */
+    private long end;
+    /**
+     * True if the buffer was written to since the last {@link #flush()}.
+     */
+    private boolean modified;
+
+    /**
+     * Opens a region file, creating it if it doesn't exist.
+     *
+     * @param fileHandle The region file.
+     * @param chunkSize  The length and width of a chunk in tiles, must match the size the file was saved with.
+     */
+    public RegionFile(FileHandle fileHandle, int chunkSize) {
+        this.heightBytes = chunkSize * chunkSize * 4;
+        this.tileBytes = chunkSize * chunkSize;
+        try {
+            file = new RandomAccessFile(fileHandle.file(), "rw");
+            channel = file.getChannel();
+            boolean created = channel.size() == 0;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, align(Math.max(channel.size(), HEADER_BYTES + TABLE_BYTES)));
+
+            if (created) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, chunkSize);
+                modified = true;
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != chunkSize) {
+                throw new RuntimeException("The region file " + fileHandle.path() + " is not a region file, or was saved with another chunk size.");
+            }
+
+            // The file can be longer than its records, new records go right after the last one
+            end = align(HEADER_BYTES + TABLE_BYTES);
+            for (int entry = HEADER_BYTES; entry < HEADER_BYTES + TABLE_BYTES; entry += 8) {
+                int length = buffer.getInt(entry + 4);
+                if (length > 0) end = Math.max(end, (buffer.getInt(entry) & 0xFFFFFFFFL) + align(length));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the region file " + fileHandle.path(), e);
+        }
+    }
+
+    /**
+     * @param localX The X location of the chunk inside the region.
+     * @param localZ The Z location of the chunk inside the region.
+     * @return True if the chunk was saved to this region.
+     */
+    public boolean hasChunk(int localX, int localZ) {
+        return buffer.getInt(getEntry(localX, localZ) + 4) > 0;
+    }
+
+    /**
+     * Reads the heights of a chunk.
+     *
+     * @param localX  The X location of the chunk inside the region.
+     * @param localZ  The Z location of the chunk inside the region.
+     * @param heights The array to read {@code chunkSize * chunkSize} heights into.
+     * @return False if the chunk was never saved, the heights are left untouched then.
+     */
+    public boolean readHeights(int localX, int localZ, float[] heights) {
+        int position = getRecord(localX, localZ, 0, heightBytes);
+        if (position < 0) return false;
+        for (int i = 0; i < tileBytes; i++) heights[i] = buffer.getFloat(position + i * 4);
+        return true;
+    }
+
+    /**
+     * Reads the tile type ids of a chunk.
+     *
+     * @param localX The X location of the chunk inside the region.
+     * @param localZ The Z location of the chunk inside the region.
+     * @param tiles  The array to read {@code chunkSize * chunkSize} tile type ids into.
+     * @return False if the chunk was saved without tile types, the tiles are left untouched then.
+     */
+    public boolean readTileTypes(int localX, int localZ, byte[] tiles) {
+        int position = getRecord(localX, localZ, heightBytes, tileBytes);
+        if (position < 0) return false;
+        for (int i = 0; i < tileBytes; i++) tiles[i] = buffer.get(position + i);
+        return true;
+    }
+
+    /**
+     * Finds part of a chunk record in the buffer.
+     *
+     * @return The position of the part, or -1 if the record doesn't hold it.
+     */
+    private int getRecord(int localX, int localZ, int start, int length) {
+        int entry = getEntry(localX, localZ);
+        if (buffer.getInt(entry + 4) < start + length) return -1;
+        return buffer.getInt(entry) + start;
+    }
+
+    /**
+     * Writes the heights and tile types of a chunk, in place if the record still fits its sectors.
+     *
+     * @param localX  The X location of the chunk inside the region.
+     * @param localZ  The Z location of the chunk inside the region.
+     * @param heights The {@code chunkSize * chunkSize} heights of the chunk.
+     * @param tiles   The {@code chunkSize * chunkSize} tile type ids of the chunk.
+     */
+    public void writeChunk(int localX, int localZ, float[] heights, byte[] tiles) {
+        int entry = getEntry(localX, localZ);
+        long offset = buffer.getInt(entry) & 0xFFFFFFFFL;
+        int oldLength = buffer.getInt(entry + 4);
+        int length = heightBytes + tileBytes;
+
+        if (oldLength == 0 || align(length) > align(oldLength)) {
+            offset = end;
+            end += align(length);
+            if (end > buffer.capacity()) grow(localX, localZ);
+        }
+
+        int position = (int) offset;
+        for (int i = 0; i < tileBytes; i++) buffer.putFloat(position + i * 4, heights[i]);
+        for (int i = 0; i < tileBytes; i++) buffer.put(position + heightBytes + i, tiles[i]);
+
+        // Only point the table at the record once it is written
+        buffer.putInt(entry, position);
+        buffer.putInt(entry + 4, length);
+        modified = true;
+    }
+
+    /**
+     * Maps the file again, twice as long, so it reaches {@link #end}. The old mapping shares the
+     * same pages, nothing written to it is lost.
+     */
+    private void grow(int localX, int localZ) {
+        try {
+            // A mapping can't reach past 2 GB, large chunks get there before the table is full
+            if (end > Integer.MAX_VALUE) throw new RuntimeException("A region file can't grow past " + Integer.MAX_VALUE + " bytes");
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, Math.max(end, buffer.capacity() * 2L)));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write chunk " + localX + Constants.SLASH + localZ + " of a region file", e);
+        }
+    }
+
+    /**
+     * Writes every record and the offset table changed since the last flush to disk.
+     */
+    public void flush() {
+        if (!modified) return;
+        buffer.force();
+        modified = false;
+    }
+
+    private static int getEntry(int localX, int localZ) {
+        return HEADER_BYTES + (localZ * REGION_SIZE + localX) * 8;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + SECTOR_BYTES - 1) / SECTOR_BYTES * SECTOR_BYTES;
+    }
+
+    @Override
+    public void dispose() {
+        flush();
+        try {
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close a region file", e);
+        }
+    }
+}
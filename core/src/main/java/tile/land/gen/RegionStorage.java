@@ -0,0 +1,244 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import lombok.Getter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static tile.land.gen.Constants.*;
+
+/**
+ * Saves and loads the heightfield and {@link TileLayer} of a world as {@link RegionFile region files}.
+ * The first run bakes the decoded heightmap image into the regions, later runs skip the image and
+ * read the heights and tiles of a chunk from its region the first time that chunk is needed.
+ * <p>
+ * Every chunk owns the {@code chunkSize * chunkSize} tiles and tile corners starting at its own
+ * corner, edits mark the owning chunk dirty and {@link #save()} only writes those chunks.
+ * The chunk size of the {@link WorldConfig} is saved with the world, and must match when it is opened.
+ * Delete the save directory to bake the heightmap image again.
+ */
+public class RegionStorage implements Disposable {
+    private static final int MAGIC = 0x544C5744; // TLWD
+    private static final String WORLD_FILE = "world.dat";
+
+    private final FileHandle directory;
+    private final LongMap<RegionFile> regions = new LongMap<>();
+    private final LongArray dirtyChunks = new LongArray();
+
+    private HeightmapProcessor heightmapProcessor;
+    private int chunkSize;
+    private float[] scratch;
+    /**
+     * The type of every tile, sized to the world once it is opened or created.
+     */
+    @Getter
+    private TileLayer tileLayer;
+    /**
+     * The size of the heightfield in chunks, rounded up.
+     */
+    private int chunksX, chunksZ;
+    /**
+     * Per chunk, if its heights are in the heightfield and if they changed since the last save.
+     */
+    private boolean[] loaded, dirty;
+
+    public RegionStorage(FileHandle directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return True if a world was saved before.
+     */
+    public boolean exists() {
+        return directory.child(WORLD_FILE).exists();
+    }
+
+    /**
+     * Opens the saved world. The heightfield is sized to the saved world, chunk heights are read in by {@link #loadChunk}.
+     *
+     * @param heightmapProcessor The heightfield to load into.
+     */
+    public void open(HeightmapProcessor heightmapProcessor) {
+        FileHandle worldFile = directory.child(WORLD_FILE);
+        try (DataInputStream input = new DataInputStream(worldFile.read())) {
+            WorldConfig worldConfig = heightmapProcessor.getWorldConfig();
+            if (input.readInt() != MAGIC || input.readInt() != worldConfig.getChunkSize()) {
+                throw new RuntimeException("The world " + worldFile.path() + " was saved with another chunk size, delete it to bake the heightmap again.");
+            }
+            int width = input.readInt();
+            int depth = input.readInt();
+            if (worldConfig.getChunkSize() * worldConfig.getWorldXLength() > width || worldConfig.getChunkSize() * worldConfig.getWorldZLength() > depth) {
+                throw new RuntimeException("The world length or width is larger than the saved world " + worldFile.path() + " supports.");
+            }
+            heightmapProcessor.setSize(width, depth);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the world " + worldFile.path(), e);
+        }
+        attach(heightmapProcessor);
+    }
+
+    /**
+     * Saves a freshly decoded heightfield as a new world, every chunk is written.
+     *
+     * @param heightmapProcessor The decoded heightfield.
+     */
+    public void create(HeightmapProcessor heightmapProcessor) {
+        directory.mkdirs();
+        FileHandle worldFile = directory.child(WORLD_FILE);
+        try (DataOutputStream output = new DataOutputStream(worldFile.write(false))) {
+            output.writeInt(MAGIC);
+            output.writeInt(heightmapProcessor.getWorldConfig().getChunkSize());
+            output.writeInt(heightmapProcessor.getWidth());
+            output.writeInt(heightmapProcessor.getDepth());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the world " + worldFile.path(), e);
+        }
+
+        attach(heightmapProcessor);
+        for (int chunkZ = 0; chunkZ < chunksZ; chunkZ++) {
+            for (int chunkX = 0; chunkX < chunksX; chunkX++) {
+                loaded[getIndex(chunkX, chunkZ)] = true;
+                tileLayer.fillFromHeights(chunkX, chunkZ, heightmapProcessor);
+                markDirty(chunkX, chunkZ);
+            }
+        }
+        save();
+    }
+
+    private void attach(HeightmapProcessor heightmapProcessor) {
+        this.heightmapProcessor = heightmapProcessor;
+        chunkSize = heightmapProcessor.getWorldConfig().getChunkSize();
+        scratch = new float[chunkSize * chunkSize];
+        chunksX = (heightmapProcessor.getWidth() + chunkSize - 1) / chunkSize;
+        chunksZ = (heightmapProcessor.getDepth() + chunkSize - 1) / chunkSize;
+        loaded = new boolean[chunksX * chunksZ];
+        dirty = new boolean[chunksX * chunksZ];
+        tileLayer = new TileLayer(chunksX, chunksZ, chunkSize, heightmapProcessor.getWorldConfig().getMaxHeight());
+    }
+
+    /**
+     * Makes sure the heightfield holds every tile corner a chunk mesh needs. That includes
+     * the first corners of the chunks after it, so those are loaded too.
+     *
+     * @param chunkX The X location of the chunk.
+     * @param chunkZ The Z location of the chunk.
+     */
+    public void loadChunkCorners(int chunkX, int chunkZ) {
+        loadChunk(chunkX, chunkZ);
+        loadChunk(chunkX + 1, chunkZ);
+        loadChunk(chunkX, chunkZ + 1);
+        loadChunk(chunkX + 1, chunkZ + 1);
+    }
+
+    /**
+     * Reads the heights and tiles owned by a chunk into the heightfield and tile layer, if they
+     * aren't there yet. Chunks saved without tiles get them from their heights.
+     */
+    public void loadChunk(int chunkX, int chunkZ) {
+        if (!contains(chunkX, chunkZ) || loaded[getIndex(chunkX, chunkZ)]) return;
+        loaded[getIndex(chunkX, chunkZ)] = true;
+
+        RegionFile region = getRegion(chunkX, chunkZ);
+        int localX = Math.floorMod(chunkX, REGION_SIZE);
+        int localZ = Math.floorMod(chunkZ, REGION_SIZE);
+        if (region.readHeights(localX, localZ, scratch)) {
+            for (int z = 0; z < chunkSize; z++) {
+                heightmapProcessor.setRow(chunkX * chunkSize, chunkZ * chunkSize + z, chunkSize, scratch, z * chunkSize);
+            }
+        }
+        if (!region.readTileTypes(localX, localZ, tileLayer.getOrCreateChunk(chunkX, chunkZ))) {
+            tileLayer.fillFromHeights(chunkX, chunkZ, heightmapProcessor);
+        }
+    }
+
+    /**
+     * Gets a tile corner, or the tile starting at it, ready to be changed: the chunk owning it is
+     * loaded first, so it doesn't overwrite the change later, and the chunk is marked dirty.
+     *
+     * @param worldX The world X location of the corner.
+     * @param worldZ The world Z location of the corner.
+     */
+    public void editCorner(int worldX, int worldZ) {
+        int chunkX = Math.floorDiv(worldX, chunkSize);
+        int chunkZ = Math.floorDiv(worldZ, chunkSize);
+        loadChunk(chunkX, chunkZ);
+        markDirty(chunkX, chunkZ);
+    }
+
+    /**
+     * Gets every tile corner in an area ready to be changed, like {@link #editCorner} does for one corner.
+     *
+     * @param minX The lowest world X corner.
+     * @param minZ The lowest world Z corner.
+     * @param maxX The highest world X corner, inclusive.
+     * @param maxZ The highest world Z corner, inclusive.
+     */
+    public void editArea(int minX, int minZ, int maxX, int maxZ) {
+        for (int chunkX = Math.floorDiv(minX, chunkSize); chunkX <= Math.floorDiv(maxX, chunkSize); chunkX++) {
+            for (int chunkZ = Math.floorDiv(minZ, chunkSize); chunkZ <= Math.floorDiv(maxZ, chunkSize); chunkZ++) {
+                loadChunk(chunkX, chunkZ);
+                markDirty(chunkX, chunkZ);
+            }
+        }
+    }
+
+    private void markDirty(int chunkX, int chunkZ) {
+        if (!contains(chunkX, chunkZ) || dirty[getIndex(chunkX, chunkZ)]) return;
+        dirty[getIndex(chunkX, chunkZ)] = true;
+        dirtyChunks.add(Chunk.Key.pack(chunkX, chunkZ));
+    }
+
+    /**
+     * Writes the heights of every chunk changed since the last save.
+     *
+     * @return The number of chunks written.
+     */
+    public int save() {
+        int saved = dirtyChunks.size;
+        for (int i = 0; i < dirtyChunks.size; i++) {
+            int chunkX = Chunk.Key.unpackX(dirtyChunks.get(i));
+            int chunkZ = Chunk.Key.unpackZ(dirtyChunks.get(i));
+            dirty[getIndex(chunkX, chunkZ)] = false;
+
+            heightmapProcessor.getBlock(chunkX * chunkSize, chunkZ * chunkSize, chunkSize, chunkSize, scratch);
+            getRegion(chunkX, chunkZ).writeChunk(Math.floorMod(chunkX, REGION_SIZE), Math.floorMod(chunkZ, REGION_SIZE), scratch, tileLayer.getOrCreateChunk(chunkX, chunkZ));
+        }
+        dirtyChunks.clear();
+
+        for (RegionFile region : regions.values()) region.flush();
+        if (saved > 0) System.out.println("[WORLD SAVE] Chunks written: " + saved);
+        return saved;
+    }
+
+    private RegionFile getRegion(int chunkX, int chunkZ) {
+        int regionX = Math.floorDiv(chunkX, REGION_SIZE);
+        int regionZ = Math.floorDiv(chunkZ, REGION_SIZE);
+        long key = Chunk.Key.pack(regionX, regionZ);
+
+        RegionFile region = regions.get(key);
+        if (region == null) {
+            region = new RegionFile(directory.child("r." + regionX + "." + regionZ + ".tlr"), chunkSize);
+            regions.put(key, region);
+        }
+        return region;
+    }
+
+    private boolean contains(int chunkX, int chunkZ) {
+        return loaded != null && chunkX >= 0 && chunkZ >= 0 && chunkX < chunksX && chunkZ < chunksZ;
+    }
+
+    private int getIndex(int chunkX, int chunkZ) {
+        return chunkZ * chunksX + chunkX;
+    }
+
+    @Override
+    public void dispose() {
+        for (RegionFile region : regions.values()) region.dispose();
+        regions.clear();
+    }
+}
@@ -11,8 +11,6 @@ import com.kotcrab.vis.ui.widget.VisLabel;
 import com.kotcrab.vis.ui.widget.VisTable;
 import lombok.RequiredArgsConstructor;
 
-import static tile.land.gen.Constants.SLASH;
-
 /**
  * Creates and renders the UI elements on the screen.
  */
@@ -22,59 +20,37 @@ public class StageHandler extends ApplicationAdapter {
     private final StringBuilder stringBuilder;
     private final PerspectiveCamera camera;
     private final ChunkHandler chunkHandler;
+    private final PerformanceMetrics metrics;
     private Stage stage;
-    private VisLabel fpsLabel;
-    private VisLabel camLocation;
-    private VisLabel chunkLocation;
-    private VisLabel chunkTileLocation;
+    private DebugText debugText;
+    /**
+     * One label per {@link DebugText} line.
+     */
+    private final VisLabel[] labels = new VisLabel[DebugText.LINE_COUNT];
 
     @Override
     public void create() {
         VisUI.load(Gdx.files.internal("tixel/x1/tixel.json"));
+        debugText = new DebugText(stringBuilder);
 
         stage = new Stage();
         VisTable visTable = new VisTable(true);
-        visTable.add(fpsLabel = new VisLabel("FPS: 99999999999999999999")).align(Alignment.LEFT.getAlignment()).row();
-        visTable.add(camLocation = new VisLabel("CAM XYZ: 99999999999999999999")).align(Alignment.LEFT.getAlignment()).row();
-        visTable.add(chunkLocation = new VisLabel("CHUNK XZ: 99999999999999999999")).align(Alignment.LEFT.getAlignment()).row();
-        visTable.add(chunkTileLocation = new VisLabel("CHUNK TILE XZ: 99999999999999999999")).align(Alignment.LEFT.getAlignment()).row();
+        for (int i = 0; i < DebugText.LINE_COUNT; i++) {
+            visTable.add(labels[i] = new VisLabel(DebugText.getTitle(i) + "99999999999999999999")).align(Alignment.LEFT.getAlignment()).row();
+        }
         visTable.pack();
         visTable.setPosition(10, Gdx.graphics.getHeight() - visTable.getHeight() - 20);
         stage.addActor(visTable);
     }
 
-    private static final String FPS = "FPS: ";
-    private static final String CAM_TILE = "CAM TILE XYZ: ";
-    private static final String CHUNK_LOC = "CHUNK XZ: ";
-    private static final String CHUNK_TILE = "CHUNK TILE XZ: ";
+    /**
+     * Updates the labels whose text changed. No strings are made, the labels copy the reused line buffers.
+     */
     public void updateDebugText() {
-        // FPS
-        stringBuilder.append(FPS);
-        stringBuilder.append(Gdx.graphics.getFramesPerSecond());
-        fpsLabel.setText(stringBuilder.toStringAndClear());
-
-        // Camera tile location
-        stringBuilder.append(CAM_TILE);
-        stringBuilder.append((int) camera.position.x);
-        stringBuilder.append(SLASH);
-        stringBuilder.append((int) camera.position.y);
-        stringBuilder.append(SLASH);
-        stringBuilder.append((int) camera.position.z);
-        camLocation.setText(stringBuilder.toStringAndClear());
-
-        // Current camera chunk
-        stringBuilder.append(CHUNK_LOC);
-        stringBuilder.append(chunkHandler.getCurrentChunkX());
-        stringBuilder.append(SLASH);
-        stringBuilder.append(chunkHandler.getCurrentChunkZ());
-        chunkLocation.setText(stringBuilder.toStringAndClear());
-
-        // Current local chunk tile (0 - Constants.CHUNK_SIZE)
-        stringBuilder.append(CHUNK_TILE);
-        stringBuilder.append(chunkHandler.getChunkTileX());
-        stringBuilder.append(SLASH);
-        stringBuilder.append(chunkHandler.getChunkTileZ());
-        chunkTileLocation.setText(stringBuilder.toStringAndClear());
+        debugText.update(Gdx.graphics.getFramesPerSecond(), camera.position, chunkHandler, metrics);
+        for (int i = 0; i < DebugText.LINE_COUNT; i++) {
+            if (debugText.isChanged(i)) labels[i].setText(debugText.getLine(i));
+        }
     }
 
     @Override
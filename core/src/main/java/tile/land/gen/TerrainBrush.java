@@ -0,0 +1,145 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.Interpolation;
+import com.badlogic.gdx.math.MathUtils;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A round sculpting brush. It reads the heights under it and writes the new heights into a
+ * {@link TerrainEdit}, so it can span any number of chunks. The strength fades out from the
+ * hard inner part of the brush to nothing at its edge.
+ * <p>
+ * Apply it with {@link ChunkHandler#applyBrush}, which re-meshes the touched chunks instead of
+ * editing their vertices one corner at a time.
+ */
+@Getter
+@Setter
+public class TerrainBrush {
+    public enum Mode {
+        /**
+         * Moves the ground up by the strength.
+         */
+        RAISE,
+        /**
+         * Moves the ground down by the strength.
+         */
+        LOWER,
+        /**
+         * Pulls the ground towards the height under the center of the brush, the strength is how far, 0 - 1.
+         */
+        FLATTEN,
+        /**
+         * Pulls every corner towards the average of the corners around it, the strength is how far, 0 - 1.
+         */
+        SMOOTH
+    }
+
+    private Mode mode;
+    /**
+     * The radius in tiles.
+     */
+    private float radius;
+    private float strength;
+    /**
+     * The part of the radius at full strength, 0 - 1.
+     */
+    private float hardness = 0.25f;
+
+    /**
+     * The heights under the brush and a ring of corners around it, row by row, read before any change.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private float[] before = new float[0];
+
+    /**
+     * @param mode     What the brush does.
+     * @param radius   The radius in tiles.
+     * @param strength How much the brush changes the ground per use.
+     */
+    public TerrainBrush(Mode mode, float radius, float strength) {
+        this.mode = mode;
+        this.radius = radius;
+        this.strength = strength;
+    }
+
+    /**
+     * Works out the new height of every corner under the brush.
+     *
+     * @param heightSource The current heights. Must hold the saved heights of every corner under the brush.
+     * @param centerX      The world X position of the center of the brush.
+     * @param centerZ      The world Z position of the center of the brush.
+     * @param out          Gets the absolute new heights, only of corners that change.
+     */
+    public void apply(HeightSource heightSource, float centerX, float centerZ, TerrainEdit out) {
+        int minX = getMinX(centerX);
+        int minZ = getMinZ(centerZ);
+        int maxX = getMaxX(centerX);
+        int maxZ = getMaxZ(centerZ);
+
+        // One corner more on every side, smoothing reads the corners around each corner
+        int width = maxX - minX + 3;
+        int depth = maxZ - minZ + 3;
+        if (before.length < width * depth) before = new float[width * depth];
+        heightSource.getBlock(minX - 1, minZ - 1, width, depth, before);
+
+        float target = heightSource.getHeight(MathUtils.round(centerX), MathUtils.round(centerZ));
+        float radius2 = radius * radius;
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                float distance2 = (x - centerX) * (x - centerX) + (z - centerZ) * (z - centerZ);
+                if (distance2 > radius2) continue;
+
+                int index = (z - minZ + 1) * width + x - minX + 1;
+                float height = before[index];
+                float weight = getWeight((float) Math.sqrt(distance2));
+                float newHeight;
+                switch (mode) {
+                    case RAISE:
+                        newHeight = height + strength * weight;
+                        break;
+                    case LOWER:
+                        newHeight = height - strength * weight;
+                        break;
+                    case FLATTEN:
+                        newHeight = MathUtils.lerp(height, target, Math.min(1, strength * weight));
+                        break;
+                    default:
+                        float average = (before[index - 1] + before[index + 1] + before[index - width] + before[index + width]
+                            + before[index - width - 1] + before[index - width + 1] + before[index + width - 1] + before[index + width + 1]) / 8;
+                        newHeight = MathUtils.lerp(height, average, Math.min(1, strength * weight));
+                        break;
+                }
+                if (newHeight != height) out.setHeight(x, z, newHeight);
+            }
+        }
+    }
+
+    /**
+     * @param distance The distance from the center of the brush, in tiles.
+     * @return How much of the strength is used at that distance, 0 - 1.
+     */
+    public float getWeight(float distance) {
+        float soft = radius * (1 - hardness);
+        if (soft <= 0) return distance <= radius ? 1 : 0;
+        return Interpolation.smooth.apply(MathUtils.clamp((radius - distance) / soft, 0, 1));
+    }
+
+    public int getMinX(float centerX) {
+        return MathUtils.ceil(centerX - radius);
+    }
+
+    public int getMinZ(float centerZ) {
+        return MathUtils.ceil(centerZ - radius);
+    }
+
+    public int getMaxX(float centerX) {
+        return MathUtils.floor(centerX + radius);
+    }
+
+    public int getMaxZ(float centerZ) {
+        return MathUtils.floor(centerZ + radius);
+    }
+}
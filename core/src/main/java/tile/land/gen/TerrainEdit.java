@@ -0,0 +1,77 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.utils.BooleanArray;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * A batch of tile corner height changes in world space. Nothing changes until the edit is
+ * committed with {@link ChunkHandler#commitEdit(TerrainEdit)}, which applies every change to
+ * the heightfield and to every chunk that shares the corner, including chunks across a border.
+ * An edit can be reused after it has been committed.
+ */
+public class TerrainEdit {
+    private final IntArray cornerX = new IntArray();
+    private final IntArray cornerZ = new IntArray();
+    private final FloatArray heights = new FloatArray();
+    private final BooleanArray relative = new BooleanArray();
+
+    /**
+     * Sets the height of a tile corner.
+     *
+     * @param worldX The world X location of the corner.
+     * @param worldZ The world Z location of the corner.
+     * @param height The new height.
+     * @return This edit, for chaining.
+     */
+    public TerrainEdit setHeight(int worldX, int worldZ, float height) {
+        return add(worldX, worldZ, height, false);
+    }
+
+    /**
+     * Raises (or lowers, if negative) a tile corner.
+     *
+     * @param worldX The world X location of the corner.
+     * @param worldZ The world Z location of the corner.
+     * @param amount How far to move the corner up.
+     * @return This edit, for chaining.
+     */
+    public TerrainEdit raise(int worldX, int worldZ, float amount) {
+        return add(worldX, worldZ, amount, true);
+    }
+
+    private TerrainEdit add(int worldX, int worldZ, float height, boolean isRelative) {
+        cornerX.add(worldX);
+        cornerZ.add(worldZ);
+        heights.add(height);
+        relative.add(isRelative);
+        return this;
+    }
+
+    public int size() {
+        return heights.size;
+    }
+
+    public int getX(int index) {
+        return cornerX.get(index);
+    }
+
+    public int getZ(int index) {
+        return cornerZ.get(index);
+    }
+
+    public float getHeight(int index) {
+        return heights.get(index);
+    }
+
+    public boolean isRelative(int index) {
+        return relative.get(index);
+    }
+
+    public void clear() {
+        cornerX.clear();
+        cornerZ.clear();
+        heights.clear();
+        relative.clear();
+    }
+}
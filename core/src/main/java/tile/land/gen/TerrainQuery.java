@@ -0,0 +1,170 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.GridPoint2;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+
+/**
+ * Answers height, normal and ray questions about the terrain in world space, straight from the
+ * heightfield, so no chunk has to be meshed or loaded for it. Every chunk gets a
+ * {@link HeightQuadtree} the first time it is asked about, and again after its heights change.
+ * <p>
+ * A ray walks the chunks it passes in order and stops at the first hit, so a pick costs a few
+ * tree walks. Use it from the render thread only.
+ */
+public class TerrainQuery {
+    private final HeightSource heightSource;
+    /**
+     * Loads saved heights into the height source before a chunk is read, null if they are all there already.
+     */
+    private final RegionStorage regionStorage;
+    private final int chunksX, chunksZ;
+    private final int chunkSize;
+    private final HeightQuadtree[] trees;
+    private final Vector3 localOrigin = new Vector3();
+
+    public TerrainQuery(HeightSource heightSource, RegionStorage regionStorage, int chunksX, int chunksZ, int chunkSize) {
+        this.heightSource = heightSource;
+        this.regionStorage = regionStorage;
+        this.chunksX = chunksX;
+        this.chunksZ = chunksZ;
+        this.chunkSize = chunkSize;
+        this.trees = new HeightQuadtree[chunksX * chunksZ];
+    }
+
+    /**
+     * Gets the height of the ground, blended between the 4 corners of the tile.
+     * Positions outside the world are moved onto its edge.
+     */
+    public float getHeightAt(float worldX, float worldZ) {
+        int chunkX = getChunkX(worldX);
+        int chunkZ = getChunkZ(worldZ);
+        return getTree(chunkX, chunkZ).getHeight(worldX - chunkX * chunkSize, worldZ - chunkZ * chunkSize);
+    }
+
+    /**
+     * Gets the up facing normal of the ground. Positions outside the world are moved onto its edge.
+     *
+     * @param out The vector to store the normal in.
+     * @return The out vector.
+     */
+    public Vector3 getNormalAt(float worldX, float worldZ, Vector3 out) {
+        int chunkX = getChunkX(worldX);
+        int chunkZ = getChunkZ(worldZ);
+        return getTree(chunkX, chunkZ).getNormal(worldX - chunkX * chunkSize, worldZ - chunkZ * chunkSize, out);
+    }
+
+    /**
+     * Finds where a ray first hits the ground.
+     *
+     * @param ray         The ray, with a normalized direction.
+     * @param maxDistance How far along the ray to look.
+     * @param out         The vector to store the hit in.
+     * @return False if the ray misses, out is left as it was then.
+     */
+    public boolean intersectRay(Ray ray, float maxDistance, Vector3 out) {
+        Vector3 origin = ray.origin;
+        Vector3 direction = ray.direction;
+
+        // Clip the ray to the world, on X and Z
+        float near = 0f, far = maxDistance;
+        float worldX = chunksX * chunkSize, worldZ = chunksZ * chunkSize;
+        if (direction.x != 0f) {
+            float t0 = -origin.x / direction.x, t1 = (worldX - origin.x) / direction.x;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        } else if (origin.x < 0f || origin.x > worldX) return false;
+        if (direction.z != 0f) {
+            float t0 = -origin.z / direction.z, t1 = (worldZ - origin.z) / direction.z;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        } else if (origin.z < 0f || origin.z > worldZ) return false;
+        if (near > far) return false;
+
+        // Walk the chunks the ray passes, nearest first
+        int chunkX = getChunkX(origin.x + direction.x * near);
+        int chunkZ = getChunkZ(origin.z + direction.z * near);
+        int stepX = direction.x > 0f ? 1 : -1;
+        int stepZ = direction.z > 0f ? 1 : -1;
+        float nextX = direction.x == 0f ? Float.POSITIVE_INFINITY : ((chunkX + (stepX > 0 ? 1 : 0)) * chunkSize - origin.x) / direction.x;
+        float nextZ = direction.z == 0f ? Float.POSITIVE_INFINITY : ((chunkZ + (stepZ > 0 ? 1 : 0)) * chunkSize - origin.z) / direction.z;
+        float deltaX = direction.x == 0f ? Float.POSITIVE_INFINITY : chunkSize / Math.abs(direction.x);
+        float deltaZ = direction.z == 0f ? Float.POSITIVE_INFINITY : chunkSize / Math.abs(direction.z);
+
+        float enter = near;
+        while (enter <= far && chunkX >= 0 && chunkZ >= 0 && chunkX < chunksX && chunkZ < chunksZ) {
+            float exit = Math.min(far, Math.min(nextX, nextZ));
+            localOrigin.set(origin.x - chunkX * chunkSize, origin.y, origin.z - chunkZ * chunkSize);
+            float hit = getTree(chunkX, chunkZ).intersect(localOrigin, direction, enter, exit);
+            if (hit >= 0f) {
+                ray.getEndPoint(out, hit);
+                return true;
+            }
+
+            enter = exit;
+            if (nextX < nextZ) {
+                chunkX += stepX;
+                nextX += deltaX;
+            } else {
+                chunkZ += stepZ;
+                nextZ += deltaZ;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the tile a ray first hits, the tile under the cursor for a pick ray.
+     *
+     * @param ray         The ray, with a normalized direction.
+     * @param maxDistance How far along the ray to look.
+     * @param hit         Stores where the ray hits.
+     * @param out         Stores the world X and Z tile.
+     * @return False if the ray misses.
+     */
+    public boolean pickTile(Ray ray, float maxDistance, Vector3 hit, GridPoint2 out) {
+        if (!intersectRay(ray, maxDistance, hit)) return false;
+        out.set(MathUtils.clamp(MathUtils.floor(hit.x), 0, chunksX * chunkSize - 1), MathUtils.clamp(MathUtils.floor(hit.z), 0, chunksZ * chunkSize - 1));
+        return true;
+    }
+
+    /**
+     * Drops the trees of every chunk that has a tile touching a corner, after its height changed.
+     *
+     * @param worldX The world X location of the corner.
+     * @param worldZ The world Z location of the corner.
+     */
+    public void invalidateCorner(int worldX, int worldZ) {
+        // A corner on a chunk border is also the last corner of the chunk before it
+        int maxChunkX = Math.floorDiv(worldX, chunkSize);
+        int maxChunkZ = Math.floorDiv(worldZ, chunkSize);
+        int minChunkX = worldX == maxChunkX * chunkSize ? maxChunkX - 1 : maxChunkX;
+        int minChunkZ = worldZ == maxChunkZ * chunkSize ? maxChunkZ - 1 : maxChunkZ;
+
+        for (int chunkX = Math.max(0, minChunkX); chunkX <= Math.min(chunksX - 1, maxChunkX); chunkX++) {
+            for (int chunkZ = Math.max(0, minChunkZ); chunkZ <= Math.min(chunksZ - 1, maxChunkZ); chunkZ++) {
+                HeightQuadtree tree = trees[chunkZ * chunksX + chunkX];
+                if (tree != null) tree.invalidate();
+            }
+        }
+    }
+
+    private HeightQuadtree getTree(int chunkX, int chunkZ) {
+        HeightQuadtree tree = trees[chunkZ * chunksX + chunkX];
+        if (tree == null) trees[chunkZ * chunksX + chunkX] = tree = new HeightQuadtree(chunkSize);
+        if (!tree.isBuilt()) {
+            if (regionStorage != null) regionStorage.loadChunkCorners(chunkX, chunkZ);
+            tree.build(heightSource, chunkX, chunkZ);
+        }
+        return tree;
+    }
+
+    private int getChunkX(float worldX) {
+        return MathUtils.clamp(MathUtils.floor(worldX / chunkSize), 0, chunksX - 1);
+    }
+
+    private int getChunkZ(float worldZ) {
+        return MathUtils.clamp(MathUtils.floor(worldZ / chunkSize), 0, chunksZ - 1);
+    }
+}
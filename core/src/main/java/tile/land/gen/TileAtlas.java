@@ -0,0 +1,58 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
+
+/**
+ * Packs a texture for every {@link TileType} into one texture, a row of cells, so tiles of
+ * every type can be drawn with one material. The cells are the base texture with the type's tint.
+ */
+public class TileAtlas {
+
+    private TileAtlas() {
+    }
+
+    /**
+     * Builds the atlas texture. Must be called on the render thread.
+     *
+     * @param baseTexture The image every cell is made from.
+     * @return The atlas, one cell per type in {@link TileType} order.
+     */
+    public static Texture createTexture(FileHandle baseTexture) {
+        Pixmap base = new Pixmap(baseTexture);
+        Pixmap atlas = new Pixmap(base.getWidth() * TileType.COUNT, base.getHeight(), Pixmap.Format.RGBA8888);
+        try {
+            Color color = new Color();
+            for (TileType type : TileType.values()) {
+                int cellX = type.ordinal() * base.getWidth();
+                for (int y = 0; y < base.getHeight(); y++) {
+                    for (int x = 0; x < base.getWidth(); x++) {
+                        color.set(base.getPixel(x, y)).mul(type.getTint());
+                        atlas.drawPixel(cellX + x, y, Color.rgba8888(color));
+                    }
+                }
+            }
+            return new Texture(atlas);
+        } finally {
+            base.dispose();
+            atlas.dispose();
+        }
+    }
+
+    /**
+     * Creates the material that draws the atlas. The tile texture coordinates count cells,
+     * the material scales them down to the atlas.
+     *
+     * @param atlas The atlas texture.
+     * @return The material.
+     */
+    public static Material createMaterial(Texture atlas) {
+        TextureAttribute diffuse = TextureAttribute.createDiffuse(atlas);
+        diffuse.scaleU = 1f / TileType.COUNT;
+        return new Material("atlas", diffuse);
+    }
+}
@@ -6,10 +6,24 @@ import lombok.Getter;
 @Getter
 @AllArgsConstructor
 public enum TileCorner {
-    SOUTH_WEST(0),
-    SOUTH_EAST(1),
-    NORTH_EAST(2),
-    NORTH_WEST(3);
+    SOUTH_WEST(0, 0, 0),
+    SOUTH_EAST(1, 1, 0),
+    NORTH_EAST(2, 1, 1),
+    NORTH_WEST(3, 0, 1);
 
     private final int vertexID;
+    /**
+     * How far this corner is from the tiles [0,0] corner, in tiles.
+     */
+    private final int offsetX, offsetZ;
+
+    /**
+     * @param offsetX How far the corner is from the tiles [0,0] corner on the X axis, 0 or 1.
+     * @param offsetZ How far the corner is from the tiles [0,0] corner on the Z axis, 0 or 1.
+     * @return The corner at the given offset.
+     */
+    public static TileCorner of(int offsetX, int offsetZ) {
+        if (offsetX == 0) return offsetZ == 0 ? SOUTH_WEST : NORTH_WEST;
+        return offsetZ == 0 ? SOUTH_EAST : NORTH_EAST;
+    }
 }
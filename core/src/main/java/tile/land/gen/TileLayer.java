@@ -0,0 +1,89 @@
+package tile.land.gen;
+
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * The {@link TileType} of every tile, one {@code chunkSize * chunkSize} byte array per chunk,
+ * stored row by row ({@code tiles[localZ * chunkSize + localX]}). A chunk keeps its array while
+ * it is unloaded, so painted tiles come back with it.
+ */
+public class TileLayer {
+    private final int chunksX, chunksZ;
+    private final int chunkSize;
+    private final byte[][] chunks;
+    /**
+     * The max height of the world, see {@link TileType#fromHeight(float, float)}.
+     */
+    private final float maxHeight;
+
+    public TileLayer(int chunksX, int chunksZ, int chunkSize) {
+        this(chunksX, chunksZ, chunkSize, MAX_HEIGHT);
+    }
+
+    public TileLayer(int chunksX, int chunksZ, int chunkSize, float maxHeight) {
+        this.chunksX = chunksX;
+        this.chunksZ = chunksZ;
+        this.chunkSize = chunkSize;
+        this.chunks = new byte[chunksX * chunksZ][];
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * @return The tile types of a chunk, or null if the chunk is outside the layer or has none yet.
+     */
+    public byte[] getChunk(int chunkX, int chunkZ) {
+        if (!contains(chunkX, chunkZ)) return null;
+        return chunks[chunkZ * chunksX + chunkX];
+    }
+
+    /**
+     * @return The tile types of a chunk, made if it had none yet, or null if the chunk is outside the layer.
+     */
+    public byte[] getOrCreateChunk(int chunkX, int chunkZ) {
+        if (!contains(chunkX, chunkZ)) return null;
+        byte[] tiles = chunks[chunkZ * chunksX + chunkX];
+        if (tiles == null) chunks[chunkZ * chunksX + chunkX] = tiles = new byte[chunkSize * chunkSize];
+        return tiles;
+    }
+
+    /**
+     * Gives every tile of a chunk the type that fits its height.
+     *
+     * @param heightSource The heights of the world.
+     */
+    public void fillFromHeights(int chunkX, int chunkZ, HeightSource heightSource) {
+        byte[] tiles = getOrCreateChunk(chunkX, chunkZ);
+        if (tiles == null) return;
+        for (int z = 0; z < chunkSize; z++) {
+            for (int x = 0; x < chunkSize; x++) {
+                float height = heightSource.getHeight(chunkX * chunkSize + x, chunkZ * chunkSize + z);
+                tiles[z * chunkSize + x] = TileType.fromHeight(height, maxHeight).getId();
+            }
+        }
+    }
+
+    /**
+     * @return The type of a world tile, the first type for tiles without one.
+     */
+    public TileType getTile(int worldX, int worldZ) {
+        byte[] tiles = getChunk(Math.floorDiv(worldX, chunkSize), Math.floorDiv(worldZ, chunkSize));
+        if (tiles == null) return TileType.get((byte) 0);
+        return TileType.get(tiles[Math.floorMod(worldZ, chunkSize) * chunkSize + Math.floorMod(worldX, chunkSize)]);
+    }
+
+    /**
+     * Sets the type of a world tile.
+     *
+     * @return False if the tile is outside the layer.
+     */
+    public boolean setTile(int worldX, int worldZ, TileType type) {
+        byte[] tiles = getOrCreateChunk(Math.floorDiv(worldX, chunkSize), Math.floorDiv(worldZ, chunkSize));
+        if (tiles == null) return false;
+        tiles[Math.floorMod(worldZ, chunkSize) * chunkSize + Math.floorMod(worldX, chunkSize)] = type.getId();
+        return true;
+    }
+
+    private boolean contains(int chunkX, int chunkZ) {
+        return chunkX >= 0 && chunkZ >= 0 && chunkX < chunksX && chunkZ < chunksZ;
+    }
+}
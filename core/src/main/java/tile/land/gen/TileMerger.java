@@ -0,0 +1,153 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.ShortArray;
+
+import java.util.Arrays;
+
+import static tile.land.gen.Constants.TILE_SIZE;
+
+/**
+ * Builds the full detail indices of a {@link ChunkMeshLayout#SHARED_GRID} chunk with runs of flat
+ * tiles merged into larger quads. Tiles merge when they have the same {@link TileType} and lie on
+ * the same plane, so a plain or an even slope takes a few quads instead of 2 triangles per tile.
+ * <p>
+ * Only the indices change, every tile corner keeps its vertex, so a merged quad is split back
+ * into tiles by merging its chunk again after one of its corners is edited.
+ * <p>
+ * A grid vertex is tinted by the tile it is the first corner of, so a tile blends into the tint
+ * of the tiles after it. A quad would stretch that blend over its whole length, so only tiles
+ * whose following tiles have their type too are merged. The tiles along a type border stay
+ * single tiles and blend over one tile, like they do unmerged.
+ * <p>
+ * Quads never reach over the edge of a sub-mesh of the {@link ChunkGrid}, their indices are per sub-mesh.
+ * Not thread safe, use one merger per thread.
+ */
+public class TileMerger {
+    private static final float EPSILON = 1e-4f;
+
+    private final ChunkGrid grid;
+    private final int chunkSize;
+    private final int corners;
+    /**
+     * The height of every tile corner, NaN for corners moved off the grid so their tiles never merge.
+     */
+    private final float[] heights;
+    private final boolean[] merged;
+    /**
+     * The indices of every sub-mesh being built.
+     */
+    private final ShortArray[] scratch;
+    private final Vector3 position = new Vector3();
+
+    public TileMerger(ChunkGrid grid) {
+        this.grid = grid;
+        this.chunkSize = grid.getChunkSize();
+        this.corners = chunkSize + 1;
+        this.heights = new float[corners * corners];
+        this.merged = new boolean[chunkSize * chunkSize];
+        this.scratch = new ShortArray[grid.getSubMeshCount(ChunkMeshLayout.SHARED_GRID, 0)];
+        for (int i = 0; i < scratch.length; i++) scratch[i] = new ShortArray();
+    }
+
+    /**
+     * Merges the tiles of a chunk.
+     *
+     * @param vertices The full detail vertices of the chunk.
+     * @param format   The format of the vertices.
+     * @param tiles    The tile types of the chunk, may be null.
+     * @return The indices of every sub-mesh, two triangles per merged quad.
+     */
+    public short[][] merge(float[] vertices, ChunkVertexFormat format, byte[] tiles) {
+        for (int x = 0; x < corners; x++) {
+            for (int z = 0; z < corners; z++) {
+                format.getPosition(vertices, grid.getVertex(ChunkMeshLayout.SHARED_GRID, 1, x, z), position);
+                boolean onGrid = Math.abs(position.x - x * TILE_SIZE) < EPSILON && Math.abs(position.z - z * TILE_SIZE) < EPSILON;
+                heights[z * corners + x] = onGrid ? position.y : Float.NaN;
+            }
+        }
+
+        Arrays.fill(merged, false);
+        for (ShortArray indices : scratch) indices.clear();
+        for (int z0 = 0; z0 < chunkSize; z0++) {
+            for (int x0 = 0; x0 < chunkSize; x0++) {
+                if (merged[z0 * chunkSize + x0]) continue;
+
+                // Grow along X first, up to the end of the sub-mesh, then grow the whole row along Z
+                int subMesh = grid.getSubMesh(ChunkMeshLayout.SHARED_GRID, 0, x0);
+                int endX = Math.min(chunkSize, grid.getSubMeshX(ChunkMeshLayout.SHARED_GRID, 0, subMesh + 1));
+                int x1 = x0;
+                while (x1 + 1 < endX && canMerge(tiles, x0, z0, x1 + 1, z0)) x1++;
+                int z1 = z0;
+                grow:
+                while (z1 + 1 < chunkSize) {
+                    for (int x = x0; x <= x1; x++) {
+                        if (!canMerge(tiles, x0, z0, x, z1 + 1)) break grow;
+                    }
+                    z1++;
+                }
+
+                for (int z = z0; z <= z1; z++) {
+                    for (int x = x0; x <= x1; x++) merged[z * chunkSize + x] = true;
+                }
+                addQuad(subMesh, x0, z0, x1 + 1, z1 + 1);
+            }
+        }
+
+        short[][] indices = new short[scratch.length][];
+        for (int i = 0; i < scratch.length; i++) indices[i] = scratch[i].toArray();
+        return indices;
+    }
+
+    /**
+     * @return True if a tile is free, and lies flat on the plane of the first tile of the quad with the same type.
+     */
+    private boolean canMerge(byte[] tiles, int firstX, int firstZ, int x, int z) {
+        if (merged[z * chunkSize + x]) return false;
+        if (grid.getTileType(tiles, x, z) != grid.getTileType(tiles, firstX, firstZ)) return false;
+        if (!hasOneTint(tiles, firstX, firstZ) || !hasOneTint(tiles, x, z)) return false;
+
+        int first = firstZ * corners + firstX;
+        float base = heights[first];
+        float slopeX = heights[first + 1] - base;
+        float slopeZ = heights[first + corners] - base;
+        if (!isOnPlane(firstX + 1, firstZ + 1, base, slopeX, slopeZ, firstX, firstZ)) return false;
+
+        return isOnPlane(x, z, base, slopeX, slopeZ, firstX, firstZ)
+            && isOnPlane(x + 1, z, base, slopeX, slopeZ, firstX, firstZ)
+            && isOnPlane(x, z + 1, base, slopeX, slopeZ, firstX, firstZ)
+            && isOnPlane(x + 1, z + 1, base, slopeX, slopeZ, firstX, firstZ);
+    }
+
+    /**
+     * @return True if all 4 corners of a tile are tinted with its type.
+     */
+    private boolean hasOneTint(byte[] tiles, int x, int z) {
+        TileType type = grid.getTileType(tiles, x, z);
+        return grid.getTileType(tiles, x + 1, z) == type
+            && grid.getTileType(tiles, x, z + 1) == type
+            && grid.getTileType(tiles, x + 1, z + 1) == type;
+    }
+
+    private boolean isOnPlane(int x, int z, float base, float slopeX, float slopeZ, int planeX, int planeZ) {
+        // NaN never passes, so moved corners and their planes never merge
+        return Math.abs(heights[z * corners + x] - (base + slopeX * (x - planeX) + slopeZ * (z - planeZ))) <= EPSILON;
+    }
+
+    /**
+     * Adds the quad from corner x0/z0 to x1/z1 to a sub-mesh, wound the same way as a tile.
+     */
+    private void addQuad(int subMesh, int x0, int z0, int x1, int z1) {
+        int v00 = grid.getLocalVertex(ChunkMeshLayout.SHARED_GRID, 0, subMesh, x0, z0);
+        int v10 = grid.getLocalVertex(ChunkMeshLayout.SHARED_GRID, 0, subMesh, x1, z0);
+        int v11 = grid.getLocalVertex(ChunkMeshLayout.SHARED_GRID, 0, subMesh, x1, z1);
+        int v01 = grid.getLocalVertex(ChunkMeshLayout.SHARED_GRID, 0, subMesh, x0, z1);
+        ShortArray indices = scratch[subMesh];
+        indices.add((short) v11);
+        indices.add((short) v10);
+        indices.add((short) v01);
+        indices.add((short) v00);
+        indices.add((short) v01);
+        indices.add((short) v10);
+    }
+}
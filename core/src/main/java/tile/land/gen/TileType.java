@@ -0,0 +1,86 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Color;
+import lombok.Getter;
+
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * The terrain types a tile can have. Every type has a cell in the {@link TileAtlas}, the texture
+ * coordinates of the cell and the packed tint are worked out once here, so meshing a tile is
+ * only a table read.
+ */
+@Getter
+public enum TileType {
+    DIRT(new Color(1f, 1f, 1f, 1f), 0.8f),
+    GRASS(new Color(0.55f, 0.8f, 0.4f, 1f), 0.55f),
+    SAND(new Color(0.95f, 0.88f, 0.6f, 1f), 0.2f),
+    ROCK(new Color(0.6f, 0.6f, 0.62f, 1f), 1f);
+
+    /**
+     * Cached, {@link #values()} makes a new array every call.
+     */
+    private static final TileType[] VALUES = values();
+    public static final int COUNT = VALUES.length;
+
+    private final Color tint;
+    /**
+     * The tint as a packed color, for the vertices of meshes that can't use the atlas.
+     */
+    private final float packedTint;
+    /**
+     * The highest height, as part of {@link Constants#MAX_HEIGHT}, a new tile of this type is given to.
+     */
+    private final float maxHeight;
+    /**
+     * The texture coordinates of the atlas cell, counted in cells. The atlas material scales them down.
+     */
+    private final float u1, v1, u2, v2;
+
+    TileType(Color tint, float maxHeight) {
+        this.tint = tint;
+        this.packedTint = tint.toFloatBits();
+        this.maxHeight = maxHeight;
+        this.u1 = ordinal();
+        this.v1 = 1f;
+        this.u2 = ordinal() + 1f;
+        this.v2 = 0f;
+    }
+
+    /**
+     * @param id The id of a type, as stored in a {@link TileLayer}.
+     * @return The type.
+     */
+    public static TileType get(byte id) {
+        return VALUES[id];
+    }
+
+    public byte getId() {
+        return (byte) ordinal();
+    }
+
+    /**
+     * Picks the type a tile starts out with from its height, in a world as high as {@link Constants#MAX_HEIGHT}.
+     *
+     * @param height The height of the tile.
+     * @return The first type whose height band holds the height.
+     */
+    public static TileType fromHeight(float height) {
+        return fromHeight(height, MAX_HEIGHT);
+    }
+
+    /**
+     * Picks the type a tile starts out with from its height.
+     *
+     * @param height    The height of the tile.
+     * @param maxHeight The max height of the world, the height bands are parts of it.
+     * @return The first type whose height band holds the height.
+     */
+    public static TileType fromHeight(float height, float maxHeight) {
+        TileType picked = ROCK;
+        for (TileType type : VALUES) {
+            if (height <= type.maxHeight * maxHeight && type.maxHeight < picked.maxHeight) picked = type;
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,187 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.LongArray;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static tile.land.gen.Constants.REGION_SIZE;
+
+/**
+ * Bakes the chunk meshes of a whole world into one mesh file per region, without a GL context,
+ * so worlds can be baked on machines without a display. The chunks of a region are meshed on
+ * every thread of the pool, and the region is written by the pool while the next one is meshed.
+ * <p>
+ * A mesh file ({@code m.X.Z.tlm}) is big endian:
+ * <pre>
+ * int magic 'TLMS', int version, int chunk size, int vertex format, int mesh layout, int levels
+ * per level after 0: sub-meshes (shared by every chunk, not stitched)
+ * int chunks
+ * per chunk: int chunk X, int chunk Z, float min height, float max height,
+ *            level 0 sub-meshes,
+ *            per level: int float count, the vertex floats as raw int bits
+ *
+ * sub-meshes: int count, per sub-mesh: int first vertex, int vertex count, int index count, short indices
+ * </pre>
+ * Vertices are in the chunk's own space, place them with {@link ChunkVertexFormat#setTransform}.
+ * Indices count from the first vertex of their sub-mesh, see {@link ChunkGrid}.
+ */
+@RequiredArgsConstructor
+public class WorldBaker {
+    private static final int MAGIC = 0x544C4D53; // TLMS
+    private static final int VERSION = 2;
+
+    private final ChunkGrid grid;
+    private final ChunkMeshLayout layout;
+    private final ChunkVertexFormat format;
+    /**
+     * Also write the full detail meshes of every region as a Wavefront OBJ, to look at them in a modelling tool.
+     */
+    @Setter
+    private boolean exportObj;
+
+    /**
+     * Bakes every chunk of a world.
+     *
+     * @param heightSource The heights, holding every tile corner of the world.
+     * @param chunksX      The number of chunks on the X axis.
+     * @param chunksZ      The number of chunks on the Z axis.
+     * @param directory    The directory to write the mesh files to.
+     * @param pool         The pool that meshes and writes.
+     * @return The number of chunks baked.
+     */
+    public int bake(HeightSource heightSource, int chunksX, int chunksZ, FileHandle directory, ForkJoinPool pool) {
+        if (!format.fitsChunkSize(grid.getChunkSize())) {
+            throw new RuntimeException("Chunks of " + grid.getChunkSize() + " tiles don't fit the texture coordinates of " + format);
+        }
+        long start = System.nanoTime();
+        directory.mkdirs();
+
+        // Tiles get the same types a new world gives them
+        TileLayer tileLayer = new TileLayer(chunksX, chunksZ, grid.getChunkSize());
+        for (int chunkX = 0; chunkX < chunksX; chunkX++) {
+            for (int chunkZ = 0; chunkZ < chunksZ; chunkZ++) {
+                tileLayer.fillFromHeights(chunkX, chunkZ, heightSource);
+            }
+        }
+        ChunkMesher chunkMesher = new ChunkMesher(heightSource, tileLayer, Color.WHITE, grid, layout, format);
+
+        // The coarser levels share their indices
+        ChunkLod chunkLod = new ChunkLod(grid);
+        short[][][] lodIndices = new short[grid.getLevelCount()][][];
+        for (int level = 1; level < grid.getLevelCount(); level++) {
+            lodIndices[level] = chunkLod.getIndices(layout, level, new int[4]);
+        }
+
+        int chunks = 0;
+        long meshNanos = 0;
+        List<ForkJoinTask<?>> writes = new ArrayList<>();
+        LongArray chunkKeys = new LongArray(REGION_SIZE * REGION_SIZE);
+        for (int regionX = 0; regionX * REGION_SIZE < chunksX; regionX++) {
+            for (int regionZ = 0; regionZ * REGION_SIZE < chunksZ; regionZ++) {
+                chunkKeys.clear();
+                for (int chunkX = regionX * REGION_SIZE; chunkX < Math.min(chunksX, (regionX + 1) * REGION_SIZE); chunkX++) {
+                    for (int chunkZ = regionZ * REGION_SIZE; chunkZ < Math.min(chunksZ, (regionZ + 1) * REGION_SIZE); chunkZ++) {
+                        chunkKeys.add(Chunk.Key.pack(chunkX, chunkZ));
+                    }
+                }
+
+                List<ChunkMeshData> meshData = chunkMesher.generateChunkMeshData(pool, chunkKeys);
+                for (ChunkMeshData data : meshData) meshNanos += data.getMeshNanos();
+                chunks += meshData.size();
+
+                final String name = "m." + regionX + "." + regionZ;
+                writes.add(pool.submit(() -> writeRegion(directory.child(name + ".tlm"), meshData, lodIndices)));
+                if (exportObj) writes.add(pool.submit(() -> writeObj(directory.child(name + ".obj"), meshData)));
+            }
+        }
+        for (ForkJoinTask<?> write : writes) write.join();
+
+        float seconds = (System.nanoTime() - start) / 1_000_000_000f;
+        System.out.println("[BAKE] Chunks: " + chunks + ", seconds: " + seconds + ", chunks per second: " + chunks / Math.max(seconds, 1e-6f));
+        System.out.println("[BAKE] Average mesh CPU ms per chunk: " + meshNanos / Math.max(1, chunks) / 1_000_000f + ", threads: " + pool.getParallelism());
+        return chunks;
+    }
+
+    private void writeRegion(FileHandle fileHandle, List<ChunkMeshData> meshData, short[][][] lodIndices) {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileHandle.write(false), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(grid.getChunkSize());
+            output.writeInt(format.ordinal());
+            output.writeInt(layout.ordinal());
+            output.writeInt(grid.getLevelCount());
+            for (int level = 1; level < grid.getLevelCount(); level++) writeSubMeshes(output, level, lodIndices[level]);
+
+            output.writeInt(meshData.size());
+            for (ChunkMeshData data : meshData) {
+                output.writeInt(data.getChunkX());
+                output.writeInt(data.getChunkZ());
+                output.writeFloat(data.getMinHeight());
+                output.writeFloat(data.getMaxHeight());
+                writeSubMeshes(output, 0, data.getIndices());
+                for (float[] vertices : data.getLodVertices()) {
+                    // Raw bits, the compact format keeps packed integers in these floats
+                    output.writeInt(vertices.length);
+                    for (float value : vertices) output.writeInt(Float.floatToRawIntBits(value));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the baked region " + fileHandle.path(), e);
+        }
+        System.out.println("[BAKE] Wrote " + fileHandle.path());
+    }
+
+    private void writeSubMeshes(DataOutputStream output, int level, short[][] indices) throws IOException {
+        output.writeInt(indices.length);
+        for (int subMesh = 0; subMesh < indices.length; subMesh++) {
+            output.writeInt(grid.getFirstVertex(layout, level, subMesh));
+            output.writeInt(grid.getSubMeshVertexCount(layout, level, subMesh));
+            output.writeInt(indices[subMesh].length);
+            for (short index : indices[subMesh]) output.writeShort(index);
+        }
+    }
+
+    /**
+     * Writes the full detail meshes in world space, one object per chunk.
+     */
+    private void writeObj(FileHandle fileHandle, List<ChunkMeshData> meshData) {
+        Vector3 position = new Vector3();
+        try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(fileHandle.write(false), 1 << 16), StandardCharsets.UTF_8)) {
+            int firstVertex = 1;
+            for (ChunkMeshData data : meshData) {
+                writer.write("o chunk_" + data.getChunkX() + "_" + data.getChunkZ() + "\n");
+                float[] vertices = data.getVertices();
+                int vertexCount = vertices.length / format.getFloatsPerVertex();
+                for (int vertex = 0; vertex < vertexCount; vertex++) {
+                    format.getPosition(vertices, vertex, position);
+                    writer.write("v " + (position.x + data.getChunkX() * grid.getChunkSize()) + " " + position.y + " " + (position.z + data.getChunkZ() * grid.getChunkSize()) + "\n");
+                }
+                for (int subMesh = 0; subMesh < data.getIndices().length; subMesh++) {
+                    short[] indices = data.getIndices()[subMesh];
+                    int first = firstVertex + grid.getFirstVertex(layout, 0, subMesh);
+                    for (int i = 0; i < indices.length; i += 3) {
+                        writer.write("f " + (first + (indices[i] & 0xFFFF)) + " " + (first + (indices[i + 1] & 0xFFFF)) + " " + (first + (indices[i + 2] & 0xFFFF)) + "\n");
+                    }
+                }
+                firstVertex += vertexCount;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the OBJ " + fileHandle.path(), e);
+        }
+        System.out.println("[BAKE] Wrote " + fileHandle.path());
+    }
+}
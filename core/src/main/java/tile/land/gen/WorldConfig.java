@@ -0,0 +1,75 @@
+package tile.land.gen;
+
+import lombok.Getter;
+
+import static tile.land.gen.Constants.*;
+
+/**
+ * The size of a world and its chunks, how much of it is in view and how high its land goes, picked
+ * per map when the world is made instead of when the game is compiled. Pass it to the {@link ChunkHandler}.
+ * <p>
+ * The chunk size is saved with the world, a saved world only opens with the chunk size it was made with.
+ */
+@Getter
+public class WorldConfig {
+    /**
+     * The world described by {@link Constants}.
+     */
+    public static final WorldConfig DEFAULT = new WorldConfig(WORLD_X_LENGTH, WORLD_Z_LENGTH, CHUNK_SIZE, CHUNK_VIEW_RADIUS, MAX_HEIGHT);
+    /**
+     * The largest chunk size. A region file of chunks this size stays below 2 GB.
+     */
+    public static final int MAX_CHUNK_SIZE = 512;
+
+    /**
+     * The length of the world in chunks.
+     */
+    private final int worldXLength, worldZLength;
+    /**
+     * The length and width of a chunk in tiles, see {@link ChunkGrid}.
+     */
+    private final int chunkSize;
+    /**
+     * How many chunks around the camera chunk are in view, along each axis.
+     */
+    private final int viewRadius;
+    /**
+     * The height of the highest land a heightmap image or noise can make, edits may go above it.
+     */
+    private final float maxHeight;
+
+    public WorldConfig(int worldXLength, int worldZLength, int chunkSize, int viewRadius, float maxHeight) {
+        if (worldXLength < 1 || worldZLength < 1) {
+            throw new RuntimeException("The world must be at least one chunk long and wide, got " + worldXLength + SLASH + worldZLength);
+        }
+        if (chunkSize < 2 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new RuntimeException("The chunk size must be between 2 and " + MAX_CHUNK_SIZE + ", got " + chunkSize);
+        }
+        if (viewRadius < 0) throw new RuntimeException("The view radius can't be negative, got " + viewRadius);
+        if (maxHeight <= 0) throw new RuntimeException("The max height must be above 0, got " + maxHeight);
+        this.worldXLength = worldXLength;
+        this.worldZLength = worldZLength;
+        this.chunkSize = chunkSize;
+        this.viewRadius = viewRadius;
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * @return The chunks in view along each axis, the camera chunk included.
+     */
+    public int getViewDiameter() {
+        return viewRadius * 2 + 1;
+    }
+
+    /**
+     * @return True if the chunk is inside the world.
+     */
+    public boolean contains(int chunkX, int chunkZ) {
+        return chunkX >= 0 && chunkZ >= 0 && chunkX < worldXLength && chunkZ < worldZLength;
+    }
+
+    @Override
+    public String toString() {
+        return "World X/Z: " + worldXLength + SLASH + worldZLength + ", chunk size: " + chunkSize + ", view radius: " + viewRadius + ", max height: " + maxHeight;
+    }
+}
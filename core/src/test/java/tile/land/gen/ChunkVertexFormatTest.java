@@ -0,0 +1,114 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Vector3;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static tile.land.gen.Constants.CHUNK_SIZE;
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * The compact format must place every vertex where the float format does, within one height step.
+ * Chunks too large for 16 bit indices must be split into sub-meshes every index of which is in range.
+ */
+class ChunkVertexFormatTest {
+    private static final float HEIGHT_TOLERANCE = ChunkVertexFormat.COMPACT_HEIGHT_STEP / 2f + 1e-4f;
+
+    @Test
+    void compactPositionsMatchFloat() {
+        HeightmapProcessor heightfield = createHeightfield();
+        ChunkGrid grid = new ChunkGrid(CHUNK_SIZE);
+        for (ChunkMeshLayout layout : ChunkMeshLayout.values()) {
+            ChunkMeshData floatData = new ChunkMesher(heightfield, null, Color.WHITE, grid, layout, ChunkVertexFormat.FLOAT).generateChunkMeshData(1, 1);
+            ChunkMeshData compactData = new ChunkMesher(heightfield, null, Color.WHITE, grid, layout, ChunkVertexFormat.COMPACT).generateChunkMeshData(1, 1);
+
+            for (int level = 0; level < grid.getLevelCount(); level++) {
+                float[] floatVertices = floatData.getLodVertices()[level];
+                float[] compactVertices = compactData.getLodVertices()[level];
+                int vertexCount = floatVertices.length / ChunkVertexFormat.FLOAT.getFloatsPerVertex();
+                assertEquals(vertexCount, compactVertices.length / ChunkVertexFormat.COMPACT.getFloatsPerVertex(), layout + " level " + level);
+
+                Vector3 expected = new Vector3();
+                Vector3 actual = new Vector3();
+                for (int vertex = 0; vertex < vertexCount; vertex++) {
+                    ChunkVertexFormat.FLOAT.getPosition(floatVertices, vertex, expected);
+                    ChunkVertexFormat.COMPACT.getPosition(compactVertices, vertex, actual);
+                    String where = layout + " level " + level + " vertex " + vertex;
+                    assertEquals(expected.x, actual.x, 0f, where);
+                    assertEquals(expected.z, actual.z, 0f, where);
+                    assertEquals(expected.y, actual.y, HEIGHT_TOLERANCE, where);
+                }
+            }
+        }
+    }
+
+    @Test
+    void compactKeepsNegativeHeights() {
+        float[] vertices = new float[ChunkVertexFormat.COMPACT.getFloatsPerVertex()];
+        ChunkVertexFormat.COMPACT.putVertex(vertices, 0, 3, -MAX_HEIGHT / 2f, 5, Color.WHITE.toFloatBits(), 1, 0);
+        Vector3 position = ChunkVertexFormat.COMPACT.getPosition(vertices, 0, new Vector3());
+        assertEquals(-MAX_HEIGHT / 2f, position.y, HEIGHT_TOLERANCE);
+
+        ChunkVertexFormat.COMPACT.setHeight(vertices, 0, -1.25f);
+        assertEquals(-1.25f, ChunkVertexFormat.COMPACT.getPosition(vertices, 0, position).y, HEIGHT_TOLERANCE);
+        assertEquals(3f, position.x, 0f);
+        assertEquals(5f, position.z, 0f);
+    }
+
+    @Test
+    void largeChunkIndicesStayInTheirSubMesh() {
+        ChunkGrid grid = new ChunkGrid(256);
+        HeightmapProcessor heightfield = new HeightmapProcessor();
+        heightfield.setSize(grid.getChunkSize() + 1, grid.getChunkSize() + 1);
+        int coarsest = grid.getLevelCount() - 1;
+        assertTrue(grid.getSubMeshCount(ChunkMeshLayout.PER_TILE, 0) > 1);
+
+        for (ChunkMeshLayout layout : ChunkMeshLayout.values()) {
+            ChunkMeshData data = new ChunkMesher(heightfield, null, Color.WHITE, grid, layout, ChunkVertexFormat.FLOAT).generateChunkMeshData(0, 0);
+
+            ChunkLod chunkLod = new ChunkLod(grid);
+            for (int level = 0; level < grid.getLevelCount(); level++) {
+                short[][] plain = level == 0 ? data.getIndices() : chunkLod.getIndices(layout, level, new int[4]);
+                short[][] stitched = chunkLod.getIndices(layout, level, new int[]{coarsest, coarsest, coarsest, coarsest});
+                int cells = grid.getChunkSize() / ChunkLod.getStep(level);
+                assertEquals(2 * cells * cells, countTriangles(grid, layout, level, plain), layout + " level " + level);
+                countTriangles(grid, layout, level, stitched);
+            }
+        }
+    }
+
+    /**
+     * Checks every index is inside its sub-mesh.
+     *
+     * @return The triangles of every sub-mesh.
+     */
+    private static int countTriangles(ChunkGrid grid, ChunkMeshLayout layout, int level, short[][] indices) {
+        assertEquals(grid.getSubMeshCount(layout, level), indices.length, layout + " level " + level);
+        int triangles = 0;
+        for (int subMesh = 0; subMesh < indices.length; subMesh++) {
+            int vertexCount = grid.getSubMeshVertexCount(layout, level, subMesh);
+            String where = layout + " level " + level + " sub-mesh " + subMesh;
+            assertTrue(vertexCount <= ChunkGrid.MAX_VERTICES, where);
+            for (short index : indices[subMesh]) assertTrue((index & 0xFFFF) < vertexCount, where);
+            triangles += indices[subMesh].length / 3;
+        }
+        return triangles;
+    }
+
+    /**
+     * A noise world of 3 by 3 chunks, with a pit dug below 0 in the middle chunk.
+     */
+    private static HeightmapProcessor createHeightfield() {
+        HeightmapProcessor heightfield = new HeightmapProcessor();
+        int corners = 3 * CHUNK_SIZE + 1;
+        heightfield.generate(new NoiseHeightSource(1337, 16f, 3), corners, corners, ForkJoinPool.commonPool());
+        for (int z = CHUNK_SIZE + 2; z < 2 * CHUNK_SIZE - 2; z++) {
+            for (int x = CHUNK_SIZE + 2; x < 2 * CHUNK_SIZE - 2; x++) heightfield.setHeight(x, z, -MAX_HEIGHT * 0.75f);
+        }
+        return heightfield;
+    }
+}
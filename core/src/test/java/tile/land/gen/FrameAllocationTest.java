@@ -0,0 +1,119 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.StringBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static tile.land.gen.Constants.CHUNK_SIZE;
+import static tile.land.gen.Constants.MAX_HEIGHT;
+
+/**
+ * Steady state frames must not allocate. Every chunk of a small world is loaded headless, then a
+ * frame runs everything {@link Main#render()} does on the CPU: the edit flush, the chunk upload,
+ * the view change checks, gathering the visible chunks, the debug text and the metrics. The camera
+ * circles across chunk borders and turns every frame, so the visible set is gathered every frame.
+ * <p>
+ * Skipped on JVMs that can't count allocations.
+ */
+class FrameAllocationTest {
+    /**
+     * The bytes a frame may allocate.
+     */
+    private static final long BUDGET = 0;
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 10_000;
+    /**
+     * Small enough that the view radius covers the whole world, so nothing is left to stream in.
+     */
+    private static final int WORLD_SIZE = 6;
+    private static final float WORLD_CENTER = WORLD_SIZE * CHUNK_SIZE * 0.5f;
+    /**
+     * More than {@link Constants#CULL_REBUILD_ANGLE}, so every frame turns far enough to gather the chunks again.
+     */
+    private static final float TURN_PER_FRAME = 2f * (float) Math.PI / 180f;
+
+    @TempDir
+    File worldDirectory;
+
+    @Test
+    void steadyStateFramesDontAllocate() {
+        AllocationCounter counter = new AllocationCounter();
+        assumeTrue(counter.isSupported(), "This JVM can't count allocations");
+
+        PerspectiveCamera camera = new PerspectiveCamera(67, 1280, 720);
+        camera.near = 0.1f;
+        camera.far = 1000f;
+        moveCamera(camera, 0);
+        PerformanceMetrics metrics = new PerformanceMetrics();
+        WorldConfig worldConfig = new WorldConfig(WORLD_SIZE, WORLD_SIZE, CHUNK_SIZE, WORLD_SIZE, MAX_HEIGHT);
+        ChunkHandler chunkHandler = HeadlessChunks.create(worldConfig, camera, metrics, new FileHandle(worldDirectory));
+        DebugText debugText = new DebugText(new StringBuilder());
+        Array<RenderableProvider> renderables = new Array<>();
+
+        try {
+            // Let the JIT, the pools and the index buffers settle first, then count
+            for (int frame = 0; frame < WARMUP_FRAMES; frame++) simulateFrame(frame, camera, chunkHandler, debugText, metrics, renderables);
+            counter.sample();
+            int gathered = 0;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                if (simulateFrame(WARMUP_FRAMES + frame, camera, chunkHandler, debugText, metrics, renderables)) gathered++;
+            }
+
+            // The metrics read their own counter once a frame, that read is not the frame's garbage.
+            // Whole bytes per frame, so a one off allocation by the JVM itself doesn't fail the test.
+            long allocated = Math.max(0, counter.sample() - counter.getOverhead() * FRAMES);
+            long bytesPerFrame = allocated / FRAMES;
+            System.out.println("[ALLOCATION CHECK] Bytes per frame: " + bytesPerFrame + ", budget: " + BUDGET);
+
+            assertEquals(FRAMES, gathered, "Every frame must gather the visible chunks");
+            assertTrue(bytesPerFrame <= BUDGET, "A steady state frame allocates " + bytesPerFrame + " bytes, the budget is " + BUDGET);
+        } finally {
+            chunkHandler.dispose();
+        }
+    }
+
+    /**
+     * @return True if the visible chunks were gathered again.
+     */
+    private static boolean simulateFrame(int frame, PerspectiveCamera camera, ChunkHandler chunkHandler, DebugText debugText, PerformanceMetrics metrics, Array<RenderableProvider> renderables) {
+        moveCamera(camera, frame);
+
+        // The same checks as Main.updateModelInstanceList
+        boolean edited = chunkHandler.flushEdits();
+        boolean uploaded = chunkHandler.uploadChunks();
+        boolean gathered = chunkHandler.hasViewChanged() || edited || uploaded;
+        if (gathered) {
+            long start = System.nanoTime();
+            renderables.clear();
+            chunkHandler.getNearbyChunks(renderables);
+            metrics.recordCacheRebuild(System.nanoTime() - start);
+        }
+
+        debugText.update(60, camera.position, chunkHandler, metrics);
+        metrics.endFrame(1 / 60f + (frame % 7) * 0.001f);
+        return gathered;
+    }
+
+    /**
+     * Circles one and a half chunks around the middle of the world, looking around while it goes.
+     */
+    private static void moveCamera(PerspectiveCamera camera, int frame) {
+        float angle = frame * 0.01f;
+        float radius = CHUNK_SIZE * 1.5f;
+        camera.position.set(WORLD_CENTER + (float) Math.cos(angle) * radius, MAX_HEIGHT, WORLD_CENTER + (float) Math.sin(angle) * radius);
+        float yaw = frame * TURN_PER_FRAME;
+        camera.direction.set((float) Math.cos(yaw), -0.5f, (float) Math.sin(yaw)).nor();
+        camera.up.set(Vector3.Y);
+        camera.update();
+    }
+}
@@ -0,0 +1,77 @@
+package tile.land.gen;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.StringBuilder;
+
+import java.lang.reflect.Proxy;
+
+import static tile.land.gen.Constants.CHUNK_MESH_LAYOUT;
+import static tile.land.gen.Constants.CHUNK_VERTEX_FORMAT;
+
+/**
+ * Loads chunks without a window, for tests and benchmarks. Mesh data is built and copied into
+ * buffers as usual, the GL calls that would upload it do nothing.
+ */
+public final class HeadlessChunks {
+    private static boolean initialized;
+
+    private HeadlessChunks() {
+    }
+
+    /**
+     * Loads the natives the buffers need and points GL at one that does nothing, once.
+     * GL 3 is left out, so meshes don't use vertex array objects.
+     */
+    public static synchronized void initialize() {
+        if (initialized) return;
+        GdxNativesLoader.load();
+        Gdx.gl = Gdx.gl20 = (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[]{GL20.class}, (proxy, method, args) -> {
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) return false;
+            if (type == int.class) return 0;
+            if (type == float.class) return 0f;
+            return null;
+        });
+        initialized = true;
+    }
+
+    /**
+     * Creates a world from noise and loads the chunks around the camera, with the default mesh layout and vertex format.
+     *
+     * @param worldConfig The size of the world, every chunk in the view radius is loaded.
+     * @param camera      Where the chunks are loaded around.
+     * @param metrics     Records the frames and the loaded chunks.
+     * @param directory   An empty directory the world is saved to.
+     * @return The loaded chunks, dispose it when done.
+     */
+    public static ChunkHandler create(WorldConfig worldConfig, PerspectiveCamera camera, PerformanceMetrics metrics, FileHandle directory) {
+        return create(worldConfig, CHUNK_MESH_LAYOUT, CHUNK_VERTEX_FORMAT, camera, metrics, directory);
+    }
+
+    /**
+     * Creates a world from noise and loads the chunks around the camera.
+     *
+     * @param worldConfig  The size of the world, every chunk in the view radius is loaded.
+     * @param meshLayout   How the chunk mesh vertices are laid out.
+     * @param vertexFormat How the chunk mesh vertices are stored.
+     * @param camera       Where the chunks are loaded around.
+     * @param metrics      Records the frames and the loaded chunks.
+     * @param directory    An empty directory the world is saved to.
+     * @return The loaded chunks, dispose it when done.
+     */
+    public static ChunkHandler create(WorldConfig worldConfig, ChunkMeshLayout meshLayout, ChunkVertexFormat vertexFormat, PerspectiveCamera camera, PerformanceMetrics metrics, FileHandle directory) {
+        initialize();
+        ChunkHandler chunkHandler = new ChunkHandler(new StringBuilder(), new ModelBuilder(), camera, metrics, worldConfig);
+        chunkHandler.setMeshLayout(meshLayout);
+        chunkHandler.setVertexFormat(vertexFormat);
+        chunkHandler.setHeightSource(new NoiseHeightSource(1, 64f, 4, worldConfig.getMaxHeight()));
+        chunkHandler.create(new RegionStorage(directory), new Material(), new Material());
+        return chunkHandler;
+    }
+}
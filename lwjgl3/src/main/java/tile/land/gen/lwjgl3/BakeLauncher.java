@@ -0,0 +1,120 @@
+package tile.land.gen.lwjgl3;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import tile.land.gen.ChunkGrid;
+import tile.land.gen.ChunkMeshLayout;
+import tile.land.gen.ChunkVertexFormat;
+import tile.land.gen.HeightmapProcessor;
+import tile.land.gen.NoiseHeightSource;
+import tile.land.gen.WorldBaker;
+import tile.land.gen.WorldConfig;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import static tile.land.gen.Constants.*;
+
+/**
+ * Bakes the chunk meshes of a world to files, headless: no window or OpenGL context is made,
+ * so it runs on build machines without a display. See {@link WorldBaker} for the file layout.
+ * <pre>
+ * --heightmap &lt;image&gt;        Bake a heightmap image, otherwise a noise world is baked
+ * --seed &lt;seed&gt;              The noise seed, 1337 by default
+ * --feature-size &lt;tiles&gt;     The size of the largest noise features, 64 by default
+ * --octaves &lt;count&gt;          The noise octaves, 4 by default
+ * --width &lt;chunks&gt;           The X length of the world, WORLD_X_LENGTH by default
+ * --depth &lt;chunks&gt;           The Z length of the world, WORLD_Z_LENGTH by default
+ * --chunk-size &lt;tiles&gt;       The length and width of a chunk, CHUNK_SIZE by default
+ * --layout &lt;layout&gt;          PER_TILE or SHARED_GRID, CHUNK_MESH_LAYOUT by default
+ * --format &lt;format&gt;          FLOAT or COMPACT, CHUNK_VERTEX_FORMAT by default
+ * --threads &lt;count&gt;          The meshing and writing threads, every core by default
+ * --out &lt;directory&gt;         Where the mesh files go, "baked" by default
+ * --obj                     Also write an OBJ per region to look at
+ * </pre>
+ */
+public class BakeLauncher {
+    public static void main(String[] args) {
+        String heightmap = null;
+        int seed = 1337;
+        float featureSize = 64f;
+        int octaves = 4;
+        int width = WORLD_X_LENGTH;
+        int depth = WORLD_Z_LENGTH;
+        int chunkSize = CHUNK_SIZE;
+        ChunkMeshLayout layout = CHUNK_MESH_LAYOUT;
+        ChunkVertexFormat format = CHUNK_VERTEX_FORMAT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = "baked";
+        boolean exportObj = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--heightmap":
+                    heightmap = getValue(args, ++i);
+                    break;
+                case "--seed":
+                    seed = Integer.parseInt(getValue(args, ++i));
+                    break;
+                case "--feature-size":
+                    featureSize = Float.parseFloat(getValue(args, ++i));
+                    break;
+                case "--octaves":
+                    octaves = Integer.parseInt(getValue(args, ++i));
+                    break;
+                case "--width":
+                    width = Integer.parseInt(getValue(args, ++i));
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(getValue(args, ++i));
+                    break;
+                case "--chunk-size":
+                    chunkSize = Integer.parseInt(getValue(args, ++i));
+                    break;
+                case "--layout":
+                    layout = ChunkMeshLayout.valueOf(getValue(args, ++i));
+                    break;
+                case "--format":
+                    format = ChunkVertexFormat.valueOf(getValue(args, ++i));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(getValue(args, ++i));
+                    break;
+                case "--out":
+                    out = getValue(args, ++i);
+                    break;
+                case "--obj":
+                    exportObj = true;
+                    break;
+                default:
+                    throw new RuntimeException("Unknown bake option " + args[i]);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            WorldConfig worldConfig = new WorldConfig(width, depth, chunkSize, CHUNK_VIEW_RADIUS, MAX_HEIGHT);
+            HeightmapProcessor heightmapProcessor = new HeightmapProcessor(worldConfig);
+            if (heightmap != null) {
+                // Decoding an image needs the native gdx library, not a GL context
+                GdxNativesLoader.load();
+                heightmapProcessor.setHeightmapImage(new FileHandle(new File(heightmap)), width, depth);
+            } else {
+                heightmapProcessor.generate(new NoiseHeightSource(seed, featureSize, octaves), width * chunkSize + 1, depth * chunkSize + 1, pool);
+            }
+            System.out.println("[BAKE] World: " + worldConfig + ", " + layout + ", " + format);
+
+            WorldBaker worldBaker = new WorldBaker(new ChunkGrid(chunkSize), layout, format);
+            worldBaker.setExportObj(exportObj);
+            worldBaker.bake(heightmapProcessor, width, depth, new FileHandle(new File(out)), pool);
+            heightmapProcessor.dispose();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String getValue(String[] args, int index) {
+        if (index >= args.length) throw new RuntimeException("The bake option " + args[index - 1] + " needs a value");
+        return args[index];
+    }
+}